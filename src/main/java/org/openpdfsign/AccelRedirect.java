@@ -0,0 +1,147 @@
+package org.openpdfsign;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Delivery of signed documents by nginx (X-Accel-Redirect): signed files are put into a directory which nginx serves
+ * at an internal location, and the response only names the file. nginx sends it with sendfile, the server is done
+ * as soon as the file is written. Files are removed a while after they were published.
+ */
+@Slf4j
+public class AccelRedirect {
+    public static final String HEADER = "X-Accel-Redirect";
+    private static final String DEFAULT_LOCATION = "/_signed/";
+    private static final long DEFAULT_MAX_AGE = 300;
+    //only files named like this are removed from the directory
+    private static final String PREFIX = "open-pdf-sign-";
+    private static final Pattern PUBLISHED = Pattern.compile(Pattern.quote(PREFIX) + "[0-9a-f-]{36}\\.pdf");
+    private static AccelRedirect INSTANCE;
+
+    private final Path directory;
+    private final String location;
+    private final long maxAgeMillis;
+    //in order of publication
+    private final Queue<Published> published = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService cleaner;
+
+    /**
+     * @param directory where signed files are published, or null to send them through the server
+     * @param location internal nginx location serving the directory
+     * @param maxAgeMillis published files are removed after this time
+     */
+    AccelRedirect(Path directory, String location, long maxAgeMillis) {
+        this.directory = directory;
+        this.location = location.endsWith("/") ? location : location + "/";
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public static synchronized AccelRedirect getInstance() {
+        if (INSTANCE == null) {
+            String directory = Configuration.getInstance().getProperties().getString("accel_redirect_dir", null);
+            INSTANCE = new AccelRedirect(directory != null ? Paths.get(directory) : null,
+                    Configuration.getInstance().getProperties().getString("accel_redirect_location", DEFAULT_LOCATION),
+                    Configuration.getInstance().getProperties().getLong("accel_redirect_max_age", DEFAULT_MAX_AGE) * 1000);
+            INSTANCE.start();
+        }
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * A new file to publish a signed document in
+     */
+    public Path newFile() {
+        return directory.resolve(PREFIX + UUID.randomUUID() + ".pdf");
+    }
+
+    /**
+     * Register a signed file in the directory for removal after the maximum age
+     * @return the value of the X-Accel-Redirect header
+     */
+    public String publish(Path file) {
+        //not by modification time: a file linked from the signed output cache keeps the time of the cache entry
+        published.add(new Published(file, System.currentTimeMillis()));
+        return location + file.getFileName().toString();
+    }
+
+    /**
+     * Remove files published longer than the maximum age ago
+     */
+    void cleanup() {
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        int removed = 0;
+        Published head;
+        while ((head = published.peek()) != null && head.time < oldest) {
+            published.poll();
+            try {
+                Files.deleteIfExists(head.file);
+                removed++;
+            } catch (IOException e) {
+                log.debug("could not remove published " + head.file + ": " + e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            log.debug("removed " + removed + " published documents");
+        }
+    }
+
+    /**
+     * Remove the files published by a previous run; other files in the directory are left alone
+     */
+    void removeAll() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*.pdf")) {
+            for (Path file : stream) {
+                if (PUBLISHED.matcher(file.getFileName().toString()).matches()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("could not clean up " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void start() {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            log.warn("could not create " + directory + ": " + e.getMessage());
+        }
+        removeAll();
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "accel-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, maxAgeMillis / 2);
+        cleaner.scheduleWithFixedDelay(this::cleanup, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Published {
+        private final Path file;
+        private final long time;
+
+        Published(Path file, long time) {
+            this.file = file;
+            this.time = time;
+        }
+    }
+}
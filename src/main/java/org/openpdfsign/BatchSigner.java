@@ -0,0 +1,196 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Signs many documents with one shared {@link SigningSession} on a pool of worker threads.
+ * For every document, one JSON line with the result is written; failing documents do not stop the batch.
+ */
+@Slf4j
+public class BatchSigner {
+    private final SigningSession session;
+    private final int threads;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public BatchSigner(SigningSession session, int threads) {
+        this.session = session;
+        this.threads = threads;
+    }
+
+    /**
+     * Collect the input files of the batch from input directory, glob pattern and manifest file.
+     * A file given more than once is signed once; two files which would be written to the same output file fail
+     * the batch before anything is signed.
+     */
+    public static List<BatchInput> collectInputs(CommandLineArguments cla) throws IOException {
+        List<BatchInput> inputs = new ArrayList<>();
+        if (cla.getInputDirectory() != null) {
+            Path directory = Paths.get(cla.getInputDirectory());
+            PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:**.{pdf,PDF}");
+            inputs.addAll(walk(directory, pdfMatcher));
+        }
+        if (cla.getInputGlob() != null) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + cla.getInputGlob());
+            inputs.addAll(walk(globBase(cla.getInputGlob()), matcher));
+        }
+        if (cla.getInputList() != null) {
+            for (String line : Files.readAllLines(Paths.get(cla.getInputList()), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                    Path input = Paths.get(line.trim());
+                    inputs.add(new BatchInput(input, manifestRelativePath(input)));
+                }
+            }
+        }
+        return deduplicate(inputs);
+    }
+
+    /**
+     * The output path of a manifest entry: relative entries keep their path, e.g. a/invoice.pdf and b/invoice.pdf
+     * stay apart; absolute ones (or ones leaving the current directory) are written under their file name
+     */
+    static Path manifestRelativePath(Path input) {
+        Path normalized = input.normalize();
+        if (normalized.isAbsolute() || normalized.startsWith("..")) {
+            return normalized.getFileName();
+        }
+        return normalized;
+    }
+
+    private static List<BatchInput> deduplicate(List<BatchInput> inputs) throws IOException {
+        Map<Path, BatchInput> byPath = new LinkedHashMap<>();
+        Map<Path, BatchInput> byOutput = new HashMap<>();
+        for (BatchInput input : inputs) {
+            if (byPath.putIfAbsent(input.getPath().toAbsolutePath().normalize(), input) != null) {
+                continue;
+            }
+            BatchInput other = byOutput.putIfAbsent(input.getRelativePath().normalize(), input);
+            if (other != null) {
+                throw new IOException(other.getPath() + " and " + input.getPath() + " would both be signed to " + input.getRelativePath());
+            }
+        }
+        return new ArrayList<>(byPath.values());
+    }
+
+    /**
+     * The directory to walk for a glob pattern: all leading path segments without wildcards
+     */
+    static Path globBase(String glob) {
+        String[] segments = glob.split("[/\\\\]", -1);
+        StringBuilder base = new StringBuilder();
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (segments[i].matches(".*[*?\\[{].*")) {
+                break;
+            }
+            base.append(segments[i]).append('/');
+        }
+        return Paths.get(base.length() == 0 ? "." : base.toString());
+    }
+
+    private static List<BatchInput> walk(Path base, PathMatcher matcher) throws IOException {
+        try (Stream<Path> files = Files.walk(base)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(p.normalize()))
+                    .sorted()
+                    .map(p -> new BatchInput(p, base.relativize(p)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Sign all inputs into the output directory
+     * @return the number of documents which could not be signed
+     */
+    public int signAll(List<BatchInput> inputs, Path outputDirectory, OutputStream resultOutput) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (BatchInput input : inputs) {
+                futures.add(executor.submit(() -> {
+                    Map<String, Object> result = sign(input, outputDirectory);
+                    if (!"ok".equals(result.get("status"))) {
+                        failed.incrementAndGet();
+                    }
+                    writeResult(result, resultOutput);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed.get();
+    }
+
+    private Map<String, Object> sign(BatchInput input, Path outputDirectory) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("input", input.getPath().toString());
+        long start = System.nanoTime();
+        try {
+            Path outputFile = outputDirectory.resolve(input.getRelativePath());
+            if (outputFile.getParent() != null) {
+                Files.createDirectories(outputFile.getParent());
+            }
+            result.put("output", outputFile.toString());
+            session.sign(input.getPath(), outputFile, null);
+            result.put("status", "ok");
+        } catch (Exception e) {
+            log.debug("could not sign " + input.getPath(), e);
+            result.put("status", "error");
+            result.put("error", e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        }
+        result.put("millis", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    private void writeResult(Map<String, Object> result, OutputStream resultOutput) {
+        try {
+            byte[] line = (mapper.writeValueAsString(result) + "\n").getBytes(StandardCharsets.UTF_8);
+            synchronized (resultOutput) {
+                resultOutput.write(line);
+                resultOutput.flush();
+            }
+        } catch (IOException e) {
+            log.error("could not write result for " + result.get("input"), e);
+        }
+    }
+
+    @Getter
+    public static class BatchInput {
+        private final Path path;
+        private final Path relativePath;
+
+        public BatchInput(Path path, Path relativePath) {
+            this.path = path;
+            this.relativePath = relativePath;
+        }
+    }
+}
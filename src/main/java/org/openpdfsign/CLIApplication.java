@@ -6,6 +6,7 @@ import com.beust.jcommander.Strings;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.io.FileUtils;
@@ -43,14 +44,8 @@ public class CLIApplication {
             Configuration.getInstance(Locale.forLanguageTag(cla.getLocale()));
         }
 
-        //convert to keystore, if not already given
-        byte[] keystore = null;
-        char[] keystorePassphrase;
-        if (!Strings.isStringEmpty(cla.getKeyPassphrase())) {
-            keystorePassphrase = cla.getKeyPassphrase().toCharArray();
-        } else {
-            keystorePassphrase = "123456789".toCharArray();
-        }
+        //decode key, from keystore or PEM files
+        KSPrivateKeyEntry keyEntry = null;
         boolean correctPassphraseAvailable = false;
         char[] passphrase = (cla.getKeyPassphrase() == null) ? null : cla.getKeyPassphrase().toCharArray();
         while (!correctPassphraseAvailable) {
@@ -58,18 +53,16 @@ public class CLIApplication {
                 if (!Strings.isStringEmpty(cla.getCertificateFile()) &&
                         !Strings.isStringEmpty(cla.getKeyFile())) {
                     //chain and key were provided (e.g. as PEM files)
-                    keystore = KeyStoreLoader.loadKeyStoreFromKeys(
+                    keyEntry = KeyStoreLoader.loadKeyEntryFromKeys(
                             Paths.get(cla.getCertificateFile()),
                             Paths.get(cla.getKeyFile()),
-                            passphrase,
-                            keystorePassphrase
+                            passphrase
                     );
                     log.debug("Key and Certificate loaded");
 
                 } else if (!Strings.isStringEmpty(cla.getKeyFile())) {
-                    //a keystore (.jks or .pfx) was provided
-                    keystore = KeyStoreLoader.loadFromKeystore(Paths.get(cla.getKeyFile()), passphrase);
-                    keystorePassphrase = passphrase;
+                    //a keystore (.jks or .pfx/.p12) was provided
+                    keyEntry = KeyStoreLoader.loadKeyEntryFromKeystore(Paths.get(cla.getKeyFile()), passphrase);
                 }
 
                 correctPassphraseAvailable = true;
@@ -96,47 +89,71 @@ public class CLIApplication {
         if (cla.getPort() > 0 || cla.getHostname() != null) {
             //set args + keys for later use
             ServerConfigHolder.getInstance().setParams(cla);
+            KeyRegistry keys = ServerConfigHolder.getInstance().getKeys();
 
             if (cla.getCertificates() != null && !cla.getCertificates().isEmpty()) {
                 //load all the keys
-                char[] staticPassphrase = keystorePassphrase;
                 cla.getCertificates().stream().forEach(cp -> {
                     try {
-                        byte[] lKeystore = KeyStoreLoader.loadKeyStoreFromKeys(
+                        KSPrivateKeyEntry lKeyEntry = KeyStoreLoader.loadKeyEntryFromKeys(
                                 Paths.get(cp.getCertificateFile()),
                                 Paths.get(cp.getKeyFile()),
-                                (cla.getKeyPassphrase() == null) ? null : cla.getKeyPassphrase().toCharArray(),
-                                staticPassphrase
+                                (cla.getKeyPassphrase() == null) ? null : cla.getKeyPassphrase().toCharArray()
                         );
-                        ServerConfigHolder.getInstance().getKeystores().put(cp.getHost(), lKeystore);
+                        keys.register(cp.getHost(), lKeyEntry);
                     } catch (Exception e) {
                         log.error("could not load key from " + cp.getKeyFile() + " / " + cp.getCertificateFile());
                     }
                 });
             }
             else {
-                ServerConfigHolder.getInstance().getKeystores().put("_", keystore);
+                keys.register("_", keyEntry);
+            }
+
+            //prepare one signing session per key, shared by all requests
+            Signer signer = new Signer();
+            for (String name : keys.getNames()) {
+                ServerConfigHolder.getInstance().getSessions().put(name, signer.newSession(keys.get(name), cla));
             }
-            ServerConfigHolder.getInstance().setKeystorePassphrase(keystorePassphrase);
+            //keep revocation data of the signing certificates fresh, outside of the signing requests
+            RevocationPrefetcher.getInstance().start(ServerConfigHolder.getInstance().getSessions().values());
+
+            //signatures run on a bounded executor, not on the request threads
+            int maxConcurrent = cla.getMaxConcurrent() > 0 ? cla.getMaxConcurrent() : Threads.defaultConcurrency();
+            long latencyTarget = cla.isAdaptiveConcurrency() ?
+                    Configuration.getInstance().getProperties().getLong("server_latency_target", 2000) : 0;
+            ServerConfigHolder.getInstance().setExecutor(new SigningExecutor(maxConcurrent, cla.getQueueSize(), latencyTarget));
+            ServerConfigHolder.getInstance().setQueueTimeoutMillis(cla.getQueueTimeout() * 1000L);
 
-            Server server = new Server();
+            //virtual threads on Java 21 and later, see Threads
+            Server server = new Server(Threads.newServerThreadPool());
             ServerConnector connector = new ServerConnector(server);
             ServletHandler servletHandler = new ServletHandler();
             server.setHandler(servletHandler);
-            servletHandler.addServletWithMapping(SignerServlet.class,"/*");
+            servletHandler.addServletWithMapping(SignerServlet.class,"/*").setAsyncSupported(true);
+            servletHandler.addServletWithMapping(StatusServlet.class,"/_status");
             connector.setPort(cla.getPort() > 0 ? cla.getPort() : 8090);
             connector.setHost(cla.getHostname() != null ? cla.getHostname() : "localhost");
             server.setConnectors(new Connector[] {connector});
             server.start();
-            log.info("Server launched " + connector.getHost() + ":" + connector.getPort());
+            log.info("Server launched " + connector.getHost() + ":" + connector.getPort() + (Threads.isVirtual() ? " (virtual threads)" : ""));
             return;
         }
+        else if (cla.hasBatchInput()) {
+            BatchSigner batchSigner = new BatchSigner(new Signer().newSession(keyEntry, cla),
+                    cla.getThreads() > 0 ? cla.getThreads() : Runtime.getRuntime().availableProcessors());
+            int failed = batchSigner.signAll(BatchSigner.collectInputs(cla), Paths.get(cla.getOutputDirectory()), System.out);
+            if (failed > 0) {
+                log.error(failed + " document(s) could not be signed");
+                System.exit(2);
+            }
+        }
         else {
             Path pdfFile = Paths.get(cla.getInputFile());
             Path outputFile = cla.getOutputFile() == null ? null : Paths.get(cla.getOutputFile());
 
             Signer s = new Signer();
-            s.signPdf(pdfFile, outputFile, keystore, keystorePassphrase, cla.isBinaryOutput() ? System.out : null, cla);
+            s.signPdf(pdfFile, outputFile, keyEntry, cla.isBinaryOutput() ? System.out : null, cla);
         }
     }
 
@@ -241,6 +258,19 @@ public class CLIApplication {
                     return null;
                 }
             }
+            else if (cla.hasBatchInput()) {
+                //key needs to be given
+                if (cla.getKeyFile() == null || cla.getKeyFile().isEmpty()) {
+                    System.out.println("key file needs to be provided");
+                    return null;
+                }
+
+                //signed files are written to the output directory
+                if (cla.getOutputDirectory() == null) {
+                    System.out.println("output directory has to be set in batch mode");
+                    return null;
+                }
+            }
             else {
                 //input file needs to be given
                 if (cla.getInputFile() == null || cla.getInputFile().isEmpty()) {
@@ -0,0 +1,145 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.aia.AIASource;
+import eu.europa.esig.dss.spi.x509.aia.DefaultAIASource;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AIA source which keeps all certificates it has seen, indexed by subject key identifier.
+ * Issuers are looked up locally by the authority key identifier of the certificate; only unknown issuers are fetched via AIA.
+ */
+@Slf4j
+public class CachingAIASource implements AIASource {
+    private static CachingAIASource INSTANCE;
+
+    private final AIASource onlineSource;
+    private final Map<String, Set<CertificateToken>> bySubjectKeyIdentifier = new ConcurrentHashMap<>();
+    //AIA results of certificates without authority key identifier
+    private final Map<String, Set<CertificateToken>> byCertificate = new ConcurrentHashMap<>();
+
+    CachingAIASource(AIASource onlineSource) {
+        this.onlineSource = onlineSource;
+    }
+
+    public static synchronized CachingAIASource getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new CachingAIASource(new DefaultAIASource(PooledDataLoader.forDownloads()));
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public Set<CertificateToken> getCertificatesByAIA(CertificateToken certificateToken) {
+        String authorityKeyIdentifier = authorityKeyIdentifier(certificateToken);
+        if (authorityKeyIdentifier != null) {
+            Set<CertificateToken> issuers = bySubjectKeyIdentifier.get(authorityKeyIdentifier);
+            if (issuers != null && !issuers.isEmpty()) {
+                return Collections.unmodifiableSet(issuers);
+            }
+        } else {
+            Set<CertificateToken> cached = byCertificate.get(certificateToken.getDSSIdAsString());
+            if (cached != null) {
+                return Collections.unmodifiableSet(cached);
+            }
+        }
+
+        log.debug("Fetching issuer of " + certificateToken.getSubject().getPrettyPrintRFC2253() + " via AIA");
+        Set<CertificateToken> fetched = onlineSource.getCertificatesByAIA(certificateToken);
+        if (fetched == null) {
+            return Collections.emptySet();
+        }
+        register(fetched);
+        if (authorityKeyIdentifier == null) {
+            byCertificate.put(certificateToken.getDSSIdAsString(), new LinkedHashSet<>(fetched));
+        }
+        return fetched;
+    }
+
+    /**
+     * Make certificates known, e.g. the configured chain of a signing key
+     */
+    public void register(Collection<CertificateToken> certificates) {
+        for (CertificateToken certificate : certificates) {
+            String subjectKeyIdentifier = subjectKeyIdentifier(certificate);
+            if (subjectKeyIdentifier != null) {
+                bySubjectKeyIdentifier.computeIfAbsent(subjectKeyIdentifier, k -> ConcurrentHashMap.newKeySet()).add(certificate);
+            }
+        }
+    }
+
+    /**
+     * Complete a certificate chain up to a self-signed certificate, as far as the issuers can be found.
+     * Called once per signing key, later lookups of the chain are local.
+     */
+    public List<CertificateToken> completeChain(List<CertificateToken> chain) {
+        List<CertificateToken> completed = new ArrayList<>(chain);
+        register(completed);
+        CertificateToken last = completed.get(completed.size() - 1);
+        while (!last.isSelfSigned() && completed.size() < 10) {
+            CertificateToken issuer = null;
+            for (CertificateToken candidate : getCertificatesByAIA(last)) {
+                if (last.isSignedBy(candidate) && !completed.contains(candidate)) {
+                    issuer = candidate;
+                    break;
+                }
+            }
+            if (issuer == null) {
+                break;
+            }
+            completed.add(issuer);
+            last = issuer;
+        }
+        if (completed.size() > chain.size()) {
+            log.debug("Certificate chain completed with " + (completed.size() - chain.size()) + " certificate(s) via AIA");
+        }
+        return completed;
+    }
+
+    static String subjectKeyIdentifier(CertificateToken certificate) {
+        try {
+            byte[] extension = certificate.getCertificate().getExtensionValue(Extension.subjectKeyIdentifier.getId());
+            if (extension == null) {
+                return null;
+            }
+            return hex(SubjectKeyIdentifier.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension)).getKeyIdentifier());
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String authorityKeyIdentifier(CertificateToken certificate) {
+        try {
+            byte[] extension = certificate.getCertificate().getExtensionValue(Extension.authorityKeyIdentifier.getId());
+            if (extension == null) {
+                return null;
+            }
+            byte[] keyIdentifier = AuthorityKeyIdentifier.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension)).getKeyIdentifier();
+            return keyIdentifier != null ? hex(keyIdentifier) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
+import eu.europa.esig.dss.spi.DSSRevocationUtils;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPSource;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPToken;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OCSP source which keeps responses by certificate and issuer until their nextUpdate
+ * (or thisUpdate + ocsp_cache_max_age, if the responder gives no nextUpdate).
+ * Responses are kept in memory and on disk, so they survive restarts; only missing or expired responses are requested online.
+ */
+@Slf4j
+public class CachingOCSPSource implements OCSPSource {
+    private static final long DEFAULT_MAX_AGE = 3600;
+    //responses are not used right up to their nextUpdate
+    private static final long EXPIRY_MARGIN_MILLIS = 60 * 1000;
+    private static CachingOCSPSource INSTANCE;
+
+    private final OCSPSource onlineSource;
+    private final Path cacheDirectory;
+    private final long maxAgeMillis;
+    private final Map<String, OCSPToken> tokens = new ConcurrentHashMap<>();
+
+    CachingOCSPSource(OCSPSource onlineSource, Path cacheDirectory, long maxAgeMillis) {
+        this.onlineSource = onlineSource;
+        this.cacheDirectory = cacheDirectory;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public static synchronized CachingOCSPSource getInstance() {
+        if (INSTANCE == null) {
+            String directory = Configuration.getInstance().getProperties().getString("ocsp_cache_dir",
+                    System.getProperty("java.io.tmpdir") + File.separator + "open-pdf-sign" + File.separator + "ocsp");
+            INSTANCE = new CachingOCSPSource(new OnlineOCSPSource(PooledDataLoader.forOcsp()), Paths.get(directory),
+                    Configuration.getInstance().getProperties().getLong("ocsp_cache_max_age", DEFAULT_MAX_AGE) * 1000);
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public OCSPToken getRevocationToken(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        String key = key(certificateToken, issuerCertificateToken);
+        long now = System.currentTimeMillis();
+
+        OCSPToken token = tokens.get(key);
+        if (token != null && isFresh(token, now)) {
+            return token;
+        }
+
+        token = readFromDisk(key, certificateToken, issuerCertificateToken);
+        if (token != null && isFresh(token, now)) {
+            log.debug("OCSP response for " + certificateToken.getDSSIdAsString() + " loaded from disk");
+            tokens.put(key, token);
+            return token;
+        }
+
+        return refresh(certificateToken, issuerCertificateToken);
+    }
+
+    /**
+     * Request a new response online and keep it, regardless of the cached one
+     */
+    public OCSPToken refresh(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        String key = key(certificateToken, issuerCertificateToken);
+        OCSPToken token = onlineSource.getRevocationToken(certificateToken, issuerCertificateToken);
+        if (token != null) {
+            tokens.put(key, token);
+            writeToDisk(key, token);
+        } else {
+            tokens.remove(key);
+        }
+        return token;
+    }
+
+    /**
+     * Cached response for the certificate, regardless of its freshness; null if none is cached
+     */
+    public OCSPToken getCachedToken(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        String key = key(certificateToken, issuerCertificateToken);
+        OCSPToken token = tokens.get(key);
+        return token != null ? token : readFromDisk(key, certificateToken, issuerCertificateToken);
+    }
+
+    /**
+     * Time until which the response is used
+     */
+    public Date getExpiry(OCSPToken token) {
+        if (token.getNextUpdate() != null) {
+            return new Date(token.getNextUpdate().getTime() - EXPIRY_MARGIN_MILLIS);
+        }
+        return new Date(token.getThisUpdate().getTime() + maxAgeMillis);
+    }
+
+    boolean isFresh(OCSPToken token, long now) {
+        return token.getThisUpdate() != null && now < getExpiry(token).getTime();
+    }
+
+    private OCSPToken readFromDisk(String key, CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        Path file = cacheDirectory.resolve(key + ".ocsp");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(file); DataInputStream in = new DataInputStream(is)) {
+            String sourceUrl = in.readUTF();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+
+            BasicOCSPResp basicResponse = new BasicOCSPResp(BasicOCSPResponse.getInstance(encoded));
+            SingleResp singleResponse = DSSRevocationUtils.getLatestSingleResponse(basicResponse, certificateToken, issuerCertificateToken);
+            if (singleResponse == null) {
+                return null;
+            }
+            OCSPToken token = new OCSPToken(basicResponse, singleResponse, certificateToken, issuerCertificateToken);
+            if (!sourceUrl.isEmpty()) {
+                token.setSourceURL(sourceUrl);
+            }
+            if (!isFresh(token, System.currentTimeMillis())) {
+                Files.deleteIfExists(file);
+            }
+            return token;
+        } catch (Exception e) {
+            log.debug("could not read cached OCSP response " + file, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, OCSPToken token) {
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path file = cacheDirectory.resolve(key + ".ocsp");
+            Path temp = Files.createTempFile(cacheDirectory, key, ".tmp");
+            try (OutputStream os = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(os)) {
+                byte[] encoded = token.getBasicOCSPResp().getEncoded();
+                out.writeUTF(token.getSourceURL() != null ? token.getSourceURL() : "");
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("could not store OCSP response: " + e.getMessage());
+        }
+    }
+
+    private static String key(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(certificateToken.getDSSIdAsString().getBytes(StandardCharsets.UTF_8));
+            digest.update(issuerCertificateToken.getDSSIdAsString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
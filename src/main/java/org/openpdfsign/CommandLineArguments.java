@@ -60,9 +60,49 @@ public class CommandLineArguments extends SignatureParameters {
     @Parameter(required = false, names={"--config"}, description = "use a configuration file")
     private String configFile;
 
+    @Parameter(required = false, names={"--input-dir"}, description = "batch mode: sign all pdf files in the given directory (recursively)")
+    @JsonProperty("input-dir")
+    private String inputDirectory;
+
+    @Parameter(required = false, names={"--input-glob"}, description = "batch mode: sign all files matching the given glob pattern, e.g. 'docs/**/*.pdf'")
+    @JsonProperty("input-glob")
+    private String inputGlob;
+
+    @Parameter(required = false, names={"--input-list"}, description = "batch mode: sign all files listed in the given manifest file (one path per line)")
+    @JsonProperty("input-list")
+    private String inputList;
+
+    @Parameter(required = false, names={"--output-dir"}, description = "batch mode: directory for the signed pdf files")
+    @JsonProperty("output-dir")
+    private String outputDirectory;
+
+    @Parameter(required = false, names={"--threads"}, description = "batch mode: number of documents signed in parallel (default: number of CPUs)")
+    @JsonProperty("threads")
+    private int threads;
+
+    @Parameter(required = false, names={"--max-concurrent"}, description = "server mode: number of documents signed in parallel (default: number of CPUs, 4 per CPU on virtual threads)")
+    @JsonProperty("max-concurrent")
+    private int maxConcurrent;
+
+    @Parameter(required = false, names={"--queue-size"}, description = "server mode: number of requests waiting for signing, further requests are answered with 429")
+    @JsonProperty("queue-size")
+    private int queueSize = 100;
+
+    @Parameter(required = false, names={"--queue-timeout"}, description = "server mode: seconds a request may wait for signing, then it is answered with 503 (0: no limit)")
+    @JsonProperty("queue-timeout")
+    private int queueTimeout = 30;
+
+    @Parameter(required = false, names={"--adaptive-concurrency"}, description = "server mode: reduce the number of parallel signatures while the latency is above server_latency_target")
+    @JsonProperty("adaptive-concurrency")
+    private boolean adaptiveConcurrency = false;
+
     @JsonProperty("certificates")
     private ArrayList<HostKeyCertificatePair> certificates;
 
+    public boolean hasBatchInput() {
+        return inputDirectory != null || inputGlob != null || inputList != null;
+    }
+
     @Getter
     @Setter
     public static class HostKeyCertificatePair {
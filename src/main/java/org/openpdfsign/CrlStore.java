@@ -0,0 +1,295 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.crl.CRLUtils;
+import eu.europa.esig.dss.crl.CRLValidity;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.CertificateExtensionsUtils;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLSource;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLToken;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local store of downloaded CRLs, a cache of parsed CRLs. Every CRL is kept on disk, so it is reused after a restart,
+ * and parsed once per CRL version instead of once per signature. CRLs are refreshed in the background before their
+ * nextUpdate. Revocation tokens handed to DSS are built from the stored CRL, once per CRL version and certificate,
+ * so the exact CRL is embedded into the signature.
+ */
+@Slf4j
+public class CrlStore implements CRLSource {
+    private static final long DEFAULT_MAX_AGE = 24 * 3600;
+    private static CrlStore INSTANCE;
+
+    private final Path directory;
+    private final long maxAgeMillis;
+    private final Map<String, StoredCrl> crls = new ConcurrentHashMap<>();
+    //running loads and downloads by URL
+    private final Map<String, CompletableFuture<StoredCrl>> updates = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "crl-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    CrlStore(Path directory, long maxAgeMillis) {
+        this.directory = directory;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public static synchronized CrlStore getInstance() {
+        if (INSTANCE == null) {
+            String directory = Configuration.getInstance().getProperties().getString("crl_cache_dir",
+                    System.getProperty("java.io.tmpdir") + File.separator + "open-pdf-sign" + File.separator + "crl");
+            INSTANCE = new CrlStore(Paths.get(directory),
+                    Configuration.getInstance().getProperties().getLong("crl_cache_max_age", DEFAULT_MAX_AGE) * 1000);
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public CRLToken getRevocationToken(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        for (String url : CertificateExtensionsUtils.getCRLAccessUrls(certificateToken)) {
+            if (!url.startsWith("http")) {
+                continue;
+            }
+            try {
+                StoredCrl crl = get(url, issuerCertificateToken);
+                if (crl != null) {
+                    return crl.getToken(certificateToken);
+                }
+            } catch (Exception e) {
+                log.warn("could not get CRL from " + url + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The stored CRL for the URL; loaded from disk, or downloaded if missing or expired
+     */
+    public StoredCrl get(String url, CertificateToken issuer) throws IOException {
+        StoredCrl crl = crls.get(url);
+        if (crl != null && !crl.isExpired(System.currentTimeMillis())) {
+            return crl;
+        }
+        return update(url, issuer, false);
+    }
+
+    /**
+     * Load or download the CRL. Only one thread per URL does so, concurrent callers for the same URL wait for its
+     * result; other URLs are not held up.
+     *
+     * @param refresh download even if the stored CRL has not expired yet
+     */
+    private StoredCrl update(String url, CertificateToken issuer, boolean refresh) throws IOException {
+        CompletableFuture<StoredCrl> update = new CompletableFuture<>();
+        CompletableFuture<StoredCrl> running = updates.putIfAbsent(url, update);
+        if (running != null) {
+            return await(url, running);
+        }
+        try {
+            StoredCrl crl = null;
+            if (!refresh) {
+                crl = crls.get(url);
+                if (crl == null) {
+                    crl = load(url, issuer);
+                }
+            }
+            if (crl == null || crl.isExpired(System.currentTimeMillis())) {
+                crl = download(url, issuer);
+            }
+            update.complete(crl);
+            return crl;
+        } catch (IOException | RuntimeException e) {
+            update.completeExceptionally(e);
+            throw e;
+        } finally {
+            updates.remove(url, update);
+        }
+    }
+
+    private static StoredCrl await(String url, CompletableFuture<StoredCrl> update) throws IOException {
+        try {
+            return update.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for CRL " + url);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * State of all stored CRLs, e.g. for the status endpoint
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (StoredCrl crl : crls.values()) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("thisUpdate", crl.getThisUpdate());
+            state.put("nextUpdate", crl.getNextUpdate());
+            state.put("ageSeconds", (now - crl.getThisUpdate().getTime()) / 1000);
+            snapshot.put(crl.getUrl(), state);
+        }
+        return snapshot;
+    }
+
+    private StoredCrl load(String url, CertificateToken issuer) {
+        Path crlFile = directory.resolve(fileName(url) + ".crl");
+        if (!Files.exists(crlFile)) {
+            return null;
+        }
+        try {
+            StoredCrl crl = new StoredCrl(url, issuer, crlFile, parse(url, issuer, Files.readAllBytes(crlFile)), maxAgeMillis);
+            crls.put(url, crl);
+            scheduleRefresh(crl);
+            log.debug("CRL " + url + " loaded from disk");
+            return crl;
+        } catch (IOException e) {
+            log.debug("could not load stored CRL " + url, e);
+            return null;
+        }
+    }
+
+    private StoredCrl download(String url, CertificateToken issuer) throws IOException {
+        log.debug("Downloading CRL " + url);
+        byte[] encoded = PooledDataLoader.forDownloads().get(url);
+        if (encoded == null || encoded.length == 0) {
+            throw new IOException("empty CRL from " + url);
+        }
+        return store(url, issuer, encoded);
+    }
+
+    /**
+     * Verify the CRL, write it to disk and use it from now on
+     */
+    StoredCrl store(String url, CertificateToken issuer, byte[] encoded) throws IOException {
+        CRLValidity validity = parse(url, issuer, encoded);
+        Files.createDirectories(directory);
+        Path crlFile = directory.resolve(fileName(url) + ".crl");
+        writeAtomically(crlFile, encoded);
+
+        StoredCrl storedCrl = new StoredCrl(url, issuer, crlFile, validity, maxAgeMillis);
+        crls.put(url, storedCrl);
+        scheduleRefresh(storedCrl);
+        return storedCrl;
+    }
+
+    /**
+     * Parse the CRL once for all tokens built from it, and check that it is signed by the issuer
+     */
+    private static CRLValidity parse(String url, CertificateToken issuer, byte[] encoded) throws IOException {
+        CRLValidity validity;
+        try {
+            validity = CRLUtils.buildCRLValidity(CRLUtils.buildCRLBinary(encoded), issuer);
+        } catch (Exception e) {
+            throw new IOException("invalid CRL from " + url, e);
+        }
+        if (!validity.isIssuerX509PrincipalMatches() || !validity.isSignatureIntact()) {
+            throw new IOException("CRL from " + url + " not signed by " + issuer.getSubject().getPrettyPrintRFC2253() +
+                    (validity.getSignatureInvalidityReason() != null ? ": " + validity.getSignatureInvalidityReason() : ""));
+        }
+        return validity;
+    }
+
+    private void scheduleRefresh(StoredCrl crl) {
+        //refresh when 90% of the validity period has passed
+        long validity = crl.getNextUpdate().getTime() - crl.getThisUpdate().getTime();
+        long refreshAt = crl.getThisUpdate().getTime() + validity * 9 / 10;
+        long delay = Math.max(0, refreshAt - System.currentTimeMillis());
+        refresher.schedule(() -> {
+            if (crls.get(crl.getUrl()) != crl) {
+                return;
+            }
+            try {
+                update(crl.getUrl(), crl.getIssuer(), true);
+            } catch (IOException e) {
+                log.warn("could not refresh CRL " + crl.getUrl() + ": " + e.getMessage());
+                if (!crl.isExpired(System.currentTimeMillis())) {
+                    refresher.schedule(() -> scheduleRefresh(crl), 5, TimeUnit.MINUTES);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static String fileName(String url) {
+        try {
+            StringBuilder name = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * One stored CRL, parsed once
+     */
+    @Getter
+    public static class StoredCrl {
+        private final String url;
+        private final CertificateToken issuer;
+        private final Path crlFile;
+        private final CRLValidity validity;
+        private final Date thisUpdate;
+        private final Date nextUpdate;
+        private final Map<String, CRLToken> tokens = new ConcurrentHashMap<>();
+
+        StoredCrl(String url, CertificateToken issuer, Path crlFile, CRLValidity validity, long maxAgeMillis) {
+            this.url = url;
+            this.issuer = issuer;
+            this.crlFile = crlFile;
+            this.validity = validity;
+            this.thisUpdate = validity.getThisUpdate();
+            this.nextUpdate = validity.getNextUpdate() != null ? validity.getNextUpdate() : new Date(thisUpdate.getTime() + maxAgeMillis);
+        }
+
+        boolean isExpired(long now) {
+            return now >= nextUpdate.getTime();
+        }
+
+        /**
+         * DSS revocation token for the certificate, built from the stored CRL once per certificate
+         */
+        CRLToken getToken(CertificateToken certificateToken) {
+            return tokens.computeIfAbsent(certificateToken.getDSSIdAsString(), id -> {
+                CRLToken token = new CRLToken(certificateToken, validity);
+                token.setSourceURL(url);
+                return token;
+            });
+        }
+    }
+}
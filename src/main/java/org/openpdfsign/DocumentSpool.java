@@ -0,0 +1,94 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A document received as a stream, e.g. an uploaded request body. Small documents are kept in memory,
+ * larger ones are spooled to a temporary file, which is removed on {@link #close()}.
+ */
+@Getter
+public class DocumentSpool implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DSSDocument document;
+    //null if kept in memory
+    private final Path file;
+    private final long size;
+
+    private DocumentSpool(DSSDocument document, Path file, long size) {
+        this.document = document;
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Read the stream up to its end
+     * @param memoryThreshold documents up to this size in bytes are kept in memory
+     * @param maxSize maximum document size in bytes, or 0 for no limit
+     * @throws DocumentTooLargeException if the document exceeds maxSize
+     */
+    public static DocumentSpool spool(InputStream in, long memoryThreshold, long maxSize, Path tempDirectory) throws IOException {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            size += read;
+            checkSize(size, maxSize);
+            memory.write(buffer, 0, read);
+            if (size > memoryThreshold) {
+                return spoolToFile(in, memory, size, maxSize, tempDirectory);
+            }
+        }
+        return new DocumentSpool(new InMemoryDocument(memory.toByteArray()), null, size);
+    }
+
+    private static DocumentSpool spoolToFile(InputStream in, ByteArrayOutputStream head, long size, long maxSize, Path tempDirectory) throws IOException {
+        Files.createDirectories(tempDirectory);
+        Path file = Files.createTempFile(tempDirectory, "upload", ".pdf");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            head.writeTo(out);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                checkSize(size, maxSize);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new DocumentSpool(new FileDocument(file.toFile()), file, size);
+    }
+
+    private static void checkSize(long size, long maxSize) throws DocumentTooLargeException {
+        if (maxSize > 0 && size > maxSize) {
+            throw new DocumentTooLargeException("document exceeds " + maxSize + " bytes");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static class DocumentTooLargeException extends IOException {
+        public DocumentTooLargeException(String message) {
+            super(message);
+        }
+    }
+}
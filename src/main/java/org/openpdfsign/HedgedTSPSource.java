@@ -0,0 +1,147 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.TimestampBinary;
+import eu.europa.esig.dss.spi.x509.tsp.TSPSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Requests timestamps from an ordered list of TSA sources.
+ * If a source has not answered within the hedge delay (or failed), the same request is sent to the next source as well.
+ * The first valid token wins, outstanding requests are cancelled.
+ * The hedge delay is either fixed, or the given latency percentile of the previous requests to the source.
+ * Sources are ordered and skipped by their health in the {@link TsaRegistry}.
+ */
+@Slf4j
+public class HedgedTSPSource implements TSPSource {
+    private static final ExecutorService EXECUTOR = Threads.newBlockingExecutor("tsp-request");
+
+    private final Map<String, TSPSource> sources;
+    private final TsaRegistry registry;
+    private final long hedgeDelayMillis;
+    private final Double hedgePercentile;
+
+    /**
+     * @param sources TSA sources by URL, in order of preference
+     * @param hedgeDelayMillis delay before the next source is asked as well
+     * @param hedgePercentile if set, use this latency percentile of the source instead of the fixed delay, once enough requests were seen
+     */
+    public HedgedTSPSource(LinkedHashMap<String, TSPSource> sources, long hedgeDelayMillis, Double hedgePercentile) {
+        this(sources, hedgeDelayMillis, hedgePercentile, TsaRegistry.getInstance());
+    }
+
+    HedgedTSPSource(LinkedHashMap<String, TSPSource> sources, long hedgeDelayMillis, Double hedgePercentile, TsaRegistry registry) {
+        this.sources = sources;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.hedgePercentile = hedgePercentile;
+        this.registry = registry;
+    }
+
+    @Override
+    public TimestampBinary getTimeStampResponse(DigestAlgorithm digestAlgorithm, byte[] digest) throws DSSException {
+        //fastest healthy sources first, sources with open circuit breaker are left out
+        List<String> names = registry.route(sources.keySet());
+        if (names.isEmpty()) {
+            throw new DSSException("No TSA source configured");
+        }
+        //if all circuits are open, the requests are sent anyway as probes
+        boolean force = registry.allOpen(names);
+        CompletionService<TimestampBinary> completionService = new ExecutorCompletionService<>(EXECUTOR);
+        List<Future<TimestampBinary>> requests = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        int next = 0;
+        int outstanding = 0;
+        try {
+            requests.add(submit(completionService, names.get(next++), digestAlgorithm, digest, force, completed));
+            outstanding++;
+            while (outstanding > 0) {
+                Future<TimestampBinary> done;
+                if (next < names.size()) {
+                    done = completionService.poll(hedgeDelay(names.get(next - 1)), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        log.debug("No timestamp within hedge delay, asking " + names.get(next) + " as well");
+                        requests.add(submit(completionService, names.get(next++), digestAlgorithm, digest, force, completed));
+                        outstanding++;
+                        continue;
+                    }
+                } else {
+                    done = completionService.take();
+                }
+                outstanding--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    errors.add(e.getCause().getMessage());
+                    //a failed source does not wait for the hedge delay
+                    if (next < names.size()) {
+                        requests.add(submit(completionService, names.get(next++), digestAlgorithm, digest, force, completed));
+                        outstanding++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DSSException("Interrupted while waiting for timestamp", e);
+        } finally {
+            completed.set(true);
+            for (Future<TimestampBinary> request : requests) {
+                request.cancel(true);
+            }
+        }
+        throw new DSSException("Unable to retrieve the timestamp: " + String.join("; ", errors));
+    }
+
+    private Future<TimestampBinary> submit(CompletionService<TimestampBinary> completionService, String name,
+                                           DigestAlgorithm digestAlgorithm, byte[] digest, boolean force, AtomicBoolean completed) {
+        return completionService.submit(() -> request(name, digestAlgorithm, digest, force, completed));
+    }
+
+    private TimestampBinary request(String name, DigestAlgorithm digestAlgorithm, byte[] digest, boolean force,
+                                    AtomicBoolean completed) {
+        if (!registry.tryAcquire(name, force)) {
+            throw new DSSException("TSA " + name + ": circuit open");
+        }
+        long start = System.nanoTime();
+        try {
+            TimestampBinary timestamp = sources.get(name).getTimeStampResponse(digestAlgorithm, digest);
+            if (timestamp == null) {
+                throw new DSSException("No timestamp from " + name);
+            }
+            registry.recordSuccess(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return timestamp;
+        } catch (RuntimeException e) {
+            if (completed.get()) {
+                //cancelled requests say nothing about the source
+                registry.release(name);
+            } else {
+                registry.recordFailure(name);
+            }
+            log.debug("TSA " + name + " failed: " + e.getMessage());
+            throw new DSSException("TSA " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    long hedgeDelay(String name) {
+        if (hedgePercentile != null) {
+            Long percentile = registry.get(name).percentile(hedgePercentile);
+            if (percentile != null) {
+                return percentile;
+            }
+        }
+        return hedgeDelayMillis;
+    }
+}
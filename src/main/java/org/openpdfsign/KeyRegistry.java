@@ -0,0 +1,59 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.token.AbstractSignatureTokenConnection;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the signing keys as decoded {@link KSPrivateKeyEntry} objects, by name (e.g. host name, or "_" as default).
+ * Keys are decoded once when loaded, signing uses the entries as is.
+ */
+public class KeyRegistry {
+    private final Map<String, KSPrivateKeyEntry> keys = new LinkedHashMap<>();
+
+    public void register(String name, KSPrivateKeyEntry key) {
+        keys.put(name, key);
+    }
+
+    public KSPrivateKeyEntry get(String name) {
+        return keys.get(name);
+    }
+
+    public boolean contains(String name) {
+        return keys.containsKey(name);
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(keys.keySet());
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * Signature token for an already decoded key entry. Nothing is opened, so nothing needs to be closed.
+     */
+    public static class KeyEntryToken extends AbstractSignatureTokenConnection {
+        private final List<DSSPrivateKeyEntry> keys;
+
+        public KeyEntryToken(DSSPrivateKeyEntry key) {
+            this.keys = Collections.singletonList(key);
+        }
+
+        @Override
+        public List<DSSPrivateKeyEntry> getKeys() {
+            return keys;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
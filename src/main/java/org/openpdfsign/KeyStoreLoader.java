@@ -1,5 +1,6 @@
 package org.openpdfsign;
 
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
@@ -22,6 +23,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class KeyStoreLoader {
@@ -39,6 +41,105 @@ public class KeyStoreLoader {
      * @throws NoSuchAlgorithmException
      */
     public static byte[] loadKeyStoreFromKeys(Path certificatePath, Path privateKeyPath, char[] privateKeyPassword, char[] keyStorePassword) throws IOException, CertificateException, OperatorCreationException, PKCSException, KeyStoreException, NoSuchAlgorithmException, KeyIsNeededException {
+        List<X509Certificate> certs = readCertificates(certificatePath);
+        PrivateKey privateKey = readPrivateKey(privateKeyPath, privateKeyPassword);
+
+        // Put them into a PKCS12 keystore and write it to a byte[]
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null);
+        keystore.setKeyEntry("alias", privateKey, keyStorePassword,
+                certs.toArray(new java.security.cert.Certificate[]{}));
+        keystore.store(bos, keyStorePassword);
+        bos.close();
+        byte[] bytes = bos.toByteArray();
+        return bytes;
+    }
+
+    /**
+     * Decode public and private key into a key entry, which can be used for signing without any further decoding
+     * @param certificatePath
+     * @param privateKeyPath
+     * @param privateKeyPassword
+     * @return
+     */
+    public static KSPrivateKeyEntry loadKeyEntryFromKeys(Path certificatePath, Path privateKeyPath, char[] privateKeyPassword) throws IOException, CertificateException, OperatorCreationException, PKCSException, KeyIsNeededException {
+        List<X509Certificate> certs = readCertificates(certificatePath);
+        PrivateKey privateKey = readPrivateKey(privateKeyPath, privateKeyPassword);
+        return new KSPrivateKeyEntry("alias", new KeyStore.PrivateKeyEntry(privateKey,
+                certs.toArray(new java.security.cert.Certificate[]{})));
+    }
+
+    public static byte[] loadFromKeystore(Path keystorePath, char[] keystorePassphrase) throws IOException, KeyStoreException, KeyIsNeededException {
+        byte[] keystore = Files.readAllBytes(keystorePath);
+        //load and check if password fits
+        openKeystore(keystore, keystorePassphrase);
+        return keystore;
+    }
+
+    /**
+     * Decode the first key of a JKS or PKCS#12 keystore into a key entry
+     * @param keystorePath
+     * @param keystorePassphrase
+     * @return
+     */
+    public static KSPrivateKeyEntry loadKeyEntryFromKeystore(Path keystorePath, char[] keystorePassphrase) throws IOException, KeyStoreException, KeyIsNeededException {
+        KeyStore keyStore = openKeystore(Files.readAllBytes(keystorePath), keystorePassphrase);
+        try {
+            for (String alias : Collections.list(keyStore.aliases())) {
+                if (keyStore.isKeyEntry(alias)) {
+                    KeyStore.Entry entry = keyStore.getEntry(alias, new KeyStore.PasswordProtection(keystorePassphrase));
+                    if (entry instanceof KeyStore.PrivateKeyEntry) {
+                        return new KSPrivateKeyEntry(alias, (KeyStore.PrivateKeyEntry) entry);
+                    }
+                }
+            }
+        } catch (UnrecoverableEntryException e) {
+            throw new KeyIsNeededException();
+        } catch (NoSuchAlgorithmException e) {
+            throw new KeyStoreException(e);
+        }
+        throw new KeyStoreException("no private key found in keystore");
+    }
+
+    private static KeyStore openKeystore(byte[] keystore, char[] keystorePassphrase) throws KeyStoreException, KeyIsNeededException {
+        KeyStore ks = KeyStore.getInstance(detectKeystoreType(keystore));
+        try {
+            ks.load(new ByteArrayInputStream(keystore), keystorePassphrase);
+            //try loading first key, check if password fits
+            String firstAlias = ks.aliases().nextElement();
+            if (firstAlias != null) {
+                ks.getKey(firstAlias, keystorePassphrase);
+            }
+            return ks;
+        } catch (NoSuchAlgorithmException | CertificateException e) {
+            throw new KeyStoreException("keystore type currently unsupported, please open an issue", e);
+        } catch (IOException e) {
+            //correct type, invalid passphrase
+            throw new KeyIsNeededException();
+        } catch (UnrecoverableKeyException e) {
+            throw new KeyIsNeededException();
+        }
+    }
+
+    private static String detectKeystoreType(byte[] keystore) throws KeyStoreException {
+        if (keystore.length >= 4) {
+            int magic = ((keystore[0] & 0xff) << 24) | ((keystore[1] & 0xff) << 16) | ((keystore[2] & 0xff) << 8) | (keystore[3] & 0xff);
+            if (magic == 0xfeedfeed) {
+                return "JKS";
+            }
+            if (magic == 0xcececece) {
+                return "JCEKS";
+            }
+            //PKCS#12 is a DER encoded SEQUENCE
+            if ((keystore[0] & 0xff) == 0x30) {
+                return "PKCS12";
+            }
+        }
+        throw new KeyStoreException("keystore type currently unsupported, please open an issue");
+    }
+
+    private static List<X509Certificate> readCertificates(Path certificatePath) throws IOException, CertificateException {
         //load key
         Security.addProvider(new BouncyCastleProvider());
 
@@ -60,10 +161,10 @@ public class KeyStoreLoader {
             cert = (X509Certificate) factory.generateCertificate(Files.newInputStream(certificatePath));
             certs.add(cert);
         }
+        return certs;
+    }
 
-
-
-
+    private static PrivateKey readPrivateKey(Path privateKeyPath, char[] privateKeyPassword) throws IOException, OperatorCreationException, PKCSException, KeyIsNeededException {
         PEMParser privPemParser = new PEMParser(Files.newBufferedReader(privateKeyPath));
 
         Object readObject = privPemParser.readObject();
@@ -84,47 +185,7 @@ public class KeyStoreLoader {
             privateKeyInfo = (PrivateKeyInfo) readObject;
         }
 
-
-
-
-        PrivateKey privateKey = (new JcaPEMKeyConverter()).getPrivateKey(privateKeyInfo);
-
-        // Put them into a PKCS12 keystore and write it to a byte[]
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        KeyStore keystore = KeyStore.getInstance("PKCS12");
-        keystore.load(null);
-        keystore.setKeyEntry("alias", privateKey, keyStorePassword,
-                certs.toArray(new java.security.cert.Certificate[]{}));
-        keystore.store(bos, keyStorePassword);
-        bos.close();
-        byte[] bytes = bos.toByteArray();
-        return bytes;
-    }
-
-    public static byte[] loadFromKeystore(Path keystorePath, char[] keystorePassphrase) throws IOException, KeyStoreException, KeyIsNeededException {
-        byte[] keystore = Files.readAllBytes(keystorePath);
-
-        //JKS - load as is
-        try {
-            KeyStore jks = KeyStore.getInstance("JKS");
-            jks.load(new ByteArrayInputStream(keystore), keystorePassphrase);
-            //try loading first key, check if password fits
-            String firstAlias = jks.aliases().nextElement();
-            if (firstAlias != null) {
-                jks.getKey(firstAlias, keystorePassphrase);
-            }
-            return keystore;
-        } catch (NoSuchAlgorithmException | CertificateException | KeyStoreException e) {
-            //throw new RuntimeException(e);
-        } catch (IOException e) {
-            //correct type, invalid passphrase
-            throw new KeyIsNeededException();
-        } catch (UnrecoverableKeyException e) {
-            throw new KeyIsNeededException();
-        }
-
-
-        throw new KeyStoreException("keystore type currently unsupported, please open an issue");
+        return (new JcaPEMKeyConverter()).getPrivateKey(privateKeyInfo);
     }
 
 
@@ -0,0 +1,179 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.europa.esig.dss.model.DSSDocument;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs all PDFs of a multipart/mixed request with one {@link SigningSession}. Parts are read one after another
+ * and signed concurrently on the {@link SigningExecutor}; every signed document is written back as a part of
+ * a multipart/mixed response as soon as it is done, so the order of the response may differ from the request.
+ * Every response part carries the index of its request part and its status, a final JSON part sums up the batch.
+ */
+@Slf4j
+public class MultipartBatchHandler {
+    public static final String PART_HEADER = "X-Open-Pdf-Sign-Part";
+    public static final String STATUS_HEADER = "X-Open-Pdf-Sign-Status";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SigningSession session;
+    private final SignatureParameters documentParams;
+    private final SigningExecutor executor;
+    private final int concurrency;
+
+    /**
+     * @param documentParams parameters of the documents, see {@link SigningSession#sign(DSSDocument, SignatureParameters)}
+     */
+    public MultipartBatchHandler(SigningSession session, SignatureParameters documentParams, SigningExecutor executor) {
+        this.session = session;
+        this.documentParams = documentParams;
+        this.executor = executor;
+        //a single batch may use all signing slots, but does not flood the queue
+        this.concurrency = executor != null ? executor.getMaxConcurrency() : 1;
+    }
+
+    public void handle(HttpServletRequest req, HttpServletResponse res, String boundary) throws IOException, InterruptedException {
+        MultipartReader reader = new MultipartReader(req.getInputStream(), boundary);
+        String responseBoundary = "open-pdf-sign-" + UUID.randomUUID();
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("multipart/mixed; boundary=" + responseBoundary);
+        ServletOutputStream out = res.getOutputStream();
+
+        long threshold = Configuration.getInstance().getProperties().getLong("upload_memory_threshold", 8 * 1024 * 1024);
+        long maxSize = Configuration.getInstance().getProperties().getLong("upload_max_size", 0);
+        Semaphore slots = new Semaphore(concurrency);
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int index = 0;
+        try {
+            MultipartReader.Part part;
+            while ((part = reader.nextPart()) != null) {
+                int partIndex = index++;
+                String filename = part.getFilename() != null ? part.getFilename() : "document-" + partIndex + ".pdf";
+                String contentId = part.getHeader("Content-ID");
+                DocumentSpool spool;
+                try {
+                    spool = DocumentSpool.spool(part.getBody(), threshold, maxSize, session.getTempDirectory() != null ?
+                            session.getTempDirectory() : Paths.get(System.getProperty("java.io.tmpdir")));
+                } catch (DocumentSpool.DocumentTooLargeException e) {
+                    failed.incrementAndGet();
+                    writeError(out, responseBoundary, partIndex, contentId, filename, e.getMessage());
+                    continue;
+                }
+
+                slots.acquire();
+                Runnable job = () -> {
+                    try {
+                        sign(out, responseBoundary, partIndex, contentId, filename, spool);
+                        ok.incrementAndGet();
+                    } catch (Exception e) {
+                        log.debug("could not sign part " + partIndex, e);
+                        failed.incrementAndGet();
+                        writeErrorQuietly(out, responseBoundary, partIndex, contentId, filename, e);
+                    } finally {
+                        try {
+                            spool.close();
+                        } catch (IOException e) {
+                            log.warn("could not remove " + spool.getFile());
+                        }
+                        slots.release();
+                    }
+                };
+                if (executor == null) {
+                    job.run();
+                } else if (!executor.submit(job)) {
+                    //queue full: this part is not signed, the client may send it again
+                    spool.close();
+                    slots.release();
+                    failed.incrementAndGet();
+                    writeError(out, responseBoundary, partIndex, contentId, filename, "server overloaded");
+                }
+            }
+        } finally {
+            //wait for the parts in progress
+            slots.acquire(concurrency);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("parts", index);
+        summary.put("ok", ok.get());
+        summary.put("failed", failed.get());
+        synchronized (out) {
+            writePartHeader(out, responseBoundary, "application/json", null);
+            out.write(mapper.writeValueAsBytes(summary));
+            out.write(("\r\n--" + responseBoundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        log.debug("signed batch of " + index + " documents, " + failed.get() + " failed");
+    }
+
+    private void sign(ServletOutputStream out, String boundary, int index, String contentId, String filename, DocumentSpool spool) throws IOException {
+        DSSDocument signedDocument = session.sign(spool.getDocument(), documentParams);
+        try {
+            synchronized (out) {
+                Map<String, String> headers = partHeaders(index, contentId, filename, "ok");
+                writePartHeader(out, boundary, "application/pdf", headers);
+                if (spool.getFile() != null) {
+                    SignedOutputWriter.write(spool.getFile(), signedDocument, out);
+                } else {
+                    signedDocument.writeTo(out);
+                }
+                out.flush();
+            }
+        } finally {
+            session.release(signedDocument);
+        }
+    }
+
+    private void writeErrorQuietly(OutputStream out, String boundary, int index, String contentId, String filename, Exception e) {
+        try {
+            writeError(out, boundary, index, contentId, filename, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        } catch (IOException ex) {
+            log.debug("could not write error of part " + index, ex);
+        }
+    }
+
+    private void writeError(OutputStream out, String boundary, int index, String contentId, String filename, String error) throws IOException {
+        Map<String, String> errorMap = new LinkedHashMap<>();
+        errorMap.put("error", error);
+        synchronized (out) {
+            writePartHeader(out, boundary, "application/json", partHeaders(index, contentId, filename, "error"));
+            out.write(mapper.writeValueAsBytes(errorMap));
+            out.flush();
+        }
+    }
+
+    private static Map<String, String> partHeaders(int index, String contentId, String filename, String status) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(PART_HEADER, String.valueOf(index));
+        headers.put(STATUS_HEADER, status);
+        if (contentId != null) {
+            headers.put("Content-ID", contentId);
+        }
+        headers.put("Content-Disposition", "attachment; filename=\"" + filename.replace("\"", "") + "\"");
+        return headers;
+    }
+
+    private static void writePartHeader(OutputStream out, String boundary, String contentType, Map<String, String> headers) throws IOException {
+        StringBuilder header = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+        header.append("Content-Type: ").append(contentType).append("\r\n");
+        if (headers != null) {
+            headers.forEach((name, value) -> header.append(name).append(": ").append(value).append("\r\n"));
+        }
+        header.append("\r\n");
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,259 @@
+package org.openpdfsign;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming reader of a multipart body (RFC 2046), e.g. multipart/mixed. Parts are read one after another,
+ * the body of a part is a stream ending at the next boundary, so no part needs to be held in memory.
+ */
+public class MultipartReader {
+    private static final int MAX_HEADER_LINE = 8 * 1024;
+
+    private final InputStream in;
+    //read ahead from the stream, part bodies are copied from here in runs
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private final byte[] delimiter;
+    private final int[] failure;
+    private PartInputStream current;
+    private boolean finished;
+
+    public MultipartReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        //failure function of the delimiter, for matching without going back in the stream
+        this.failure = new int[delimiter.length];
+        for (int i = 1, k = 0; i < delimiter.length; i++) {
+            while (k > 0 && delimiter[i] != delimiter[k]) {
+                k = failure[k - 1];
+            }
+            if (delimiter[i] == delimiter[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+    }
+
+    /**
+     * The boundary parameter of a multipart content type, or null
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("boundary")) {
+                String value = pair[1].trim();
+                return value.startsWith("\"") && value.endsWith("\"") && value.length() > 1 ? value.substring(1, value.length() - 1) : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Skip to the next part. The body of the previous part is skipped, if it was not read completely.
+     * @return the next part, or null after the last one
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current == null) {
+            //the first delimiter has no leading line break: start as if it had been read
+            current = new PartInputStream(2);
+        }
+        drain(current);
+
+        //after the delimiter: "--" for the end, or (optional whitespace and) a line break
+        int first = read();
+        int second = read();
+        if (first == '-' && second == '-') {
+            finished = true;
+            return null;
+        }
+        while (!(first == '\r' && second == '\n')) {
+            if (first != ' ' && first != '\t') {
+                throw new IOException("invalid multipart delimiter line");
+            }
+            first = second;
+            second = read();
+        }
+
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        current = new PartInputStream(0);
+        return new Part(headers, current);
+    }
+
+    private int read() throws IOException {
+        fill();
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Make sure at least one byte is buffered, reading from the stream if none is
+     */
+    private void fill() throws IOException {
+        while (position >= limit) {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                throw new EOFException("unexpected end of multipart body");
+            }
+            position = 0;
+            limit = read;
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = read()) != '\n') {
+            if (line.size() > MAX_HEADER_LINE) {
+                throw new IOException("multipart header line too long");
+            }
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream part) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (part.read(buffer) != -1) {
+            //skip
+        }
+    }
+
+    @Getter
+    public static class Part {
+        private final Map<String, String> headers;
+        private final InputStream body;
+
+        Part(Map<String, String> headers, InputStream body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * The file name of the Content-Disposition header, without directories, or null
+         */
+        public String getFilename() {
+            String disposition = headers.get("Content-Disposition");
+            if (disposition == null) {
+                return null;
+            }
+            for (String parameter : disposition.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].trim().toLowerCase(Locale.ROOT).equals("filename")) {
+                    String value = pair[1].trim().replace("\"", "");
+                    return value.substring(Math.max(value.lastIndexOf('/'), value.lastIndexOf('\\')) + 1);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The body of one part: the bytes up to the next delimiter
+     */
+    private class PartInputStream extends InputStream {
+        //number of delimiter bytes matched so far
+        private int matched;
+        //bytes which looked like the start of a delimiter, but were content
+        private final byte[] pending = new byte[delimiter.length];
+        private int pendingPosition;
+        private int pendingLength;
+        private boolean done;
+        private final byte[] single = new byte[1];
+
+        PartInputStream(int matched) {
+            this.matched = matched;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (pendingPosition < pendingLength) {
+                int count = Math.min(length, pendingLength - pendingPosition);
+                System.arraycopy(pending, pendingPosition, target, offset, count);
+                pendingPosition += count;
+                return count;
+            }
+            pendingPosition = 0;
+            pendingLength = 0;
+            int count = 0;
+            //return what is buffered, rather than waiting for the network; wait only if nothing could be returned
+            while (count == 0 && !done) {
+                fill();
+                while (count < length && position < limit) {
+                    if (matched == 0) {
+                        //outside of a possible delimiter: copy everything up to the next delimiter start at once
+                        int end = Math.min(limit, position + length - count);
+                        int run = position;
+                        while (run < end && buffer[run] != delimiter[0]) {
+                            run++;
+                        }
+                        System.arraycopy(buffer, position, target, offset + count, run - position);
+                        count += run - position;
+                        position = run;
+                        if (run == end) {
+                            continue;
+                        }
+                    }
+                    byte b = buffer[position++];
+                    int previous = matched;
+                    while (matched > 0 && delimiter[matched] != b) {
+                        matched = failure[matched - 1];
+                    }
+                    if (delimiter[matched] == b) {
+                        matched++;
+                    }
+                    if (matched == delimiter.length) {
+                        done = true;
+                        break;
+                    }
+                    //bytes of the previous match (and b) which are no longer part of a possible delimiter
+                    int released = previous + 1 - matched;
+                    for (int i = 0; i < released; i++) {
+                        byte content = i < previous ? delimiter[i] : b;
+                        if (count < length) {
+                            target[offset + count++] = content;
+                        } else {
+                            pending[pendingLength++] = content;
+                        }
+                    }
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package org.openpdfsign;
+
+import com.beust.jcommander.Strings;
+import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
+import eu.europa.esig.dss.service.http.proxy.ProxyConfig;
+import eu.europa.esig.dss.service.http.proxy.ProxyProperties;
+import eu.europa.esig.dss.spi.client.http.Protocol;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.routing.DefaultProxyRoutePlanner;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Data loaders for TSA, OCSP, CRL and AIA requests, sharing one process-wide pool of keep-alive connections.
+ * DSS builds (and closes) an HTTP client with a connection manager of its own for every request; here each client
+ * is built on the shared pool instead, which it does not close, so connections and TLS sessions to the same hosts
+ * are reused.
+ */
+@Slf4j
+public class PooledDataLoader extends CommonsDataLoader {
+    private static final String HTTP_PROXY_HOST = "http.proxyHost";
+    private static final String HTTPS_PROXY_HOST = "https.proxyHost";
+    private static final String HTTP_PROXY_PORT = "http.proxyPort";
+    private static final String HTTPS_PROXY_PORT = "https.proxyPort";
+    private static final int DEFAULT_MAX_TOTAL = 20;
+    private static final int DEFAULT_MAX_PER_ROUTE = 5;
+    //the constants of TimestampDataLoader and OCSPDataLoader are not visible
+    private static final String TIMESTAMP_QUERY_CONTENT_TYPE = "application/timestamp-query";
+    private static final String OCSP_CONTENT_TYPE = "application/ocsp-request";
+
+    private static final Map<String, PooledDataLoader> LOADERS = new LinkedHashMap<>();
+    private static PoolingHttpClientConnectionManager connectionManager;
+
+    private HttpRequestRetryStrategy retryStrategy;
+
+    private PooledDataLoader(String contentType) {
+        super(contentType);
+        setProxyConfig(retrieveProxyConfig());
+        setConnectionsMaxTotal(Configuration.getInstance().getProperties().getInt("http_pool_max_total", DEFAULT_MAX_TOTAL));
+        setConnectionsMaxPerRoute(Configuration.getInstance().getProperties().getInt("http_pool_max_per_route", DEFAULT_MAX_PER_ROUTE));
+    }
+
+    private static synchronized PooledDataLoader getInstance(String contentType) {
+        return LOADERS.computeIfAbsent(contentType == null ? "" : contentType, c -> new PooledDataLoader(contentType));
+    }
+
+    /**
+     * Loader for RFC 3161 timestamp requests
+     */
+    public static PooledDataLoader forTimestamps() {
+        return getInstance(TIMESTAMP_QUERY_CONTENT_TYPE);
+    }
+
+    /**
+     * Loader for OCSP requests
+     */
+    public static PooledDataLoader forOcsp() {
+        return getInstance(OCSP_CONTENT_TYPE);
+    }
+
+    /**
+     * Loader for plain downloads, e.g. CRLs, AIA certificates and trusted lists
+     */
+    public static PooledDataLoader forDownloads() {
+        return getInstance(null);
+    }
+
+    @Override
+    public void setRetryStrategy(HttpRequestRetryStrategy retryStrategy) {
+        //DSS keeps the strategy private, it is needed when building the client here
+        super.setRetryStrategy(retryStrategy);
+        this.retryStrategy = retryStrategy;
+    }
+
+    @Override
+    protected CloseableHttpClient getHttpClient(String url) {
+        return getHttpClientBuilder(url).build();
+    }
+
+    /**
+     * Builds the client like DSS does (request config, credentials, proxy), but on the shared pool: DSS would create
+     * a new connection manager with its own TLS setup for each request. The loader is not changed after creation,
+     * so unlike in DSS no lock is needed.
+     */
+    @Override
+    protected HttpClientBuilder getHttpClientBuilder(String url) {
+        HttpClientBuilder builder = HttpClients.custom();
+        if (isUseSystemProperties()) {
+            builder.useSystemProperties();
+        }
+        BasicCredentialsProvider credentialsProvider = getCredentialsProvider();
+        builder.setDefaultCredentialsProvider(credentialsProvider);
+        configureProxy(builder, credentialsProvider, url);
+        return builder
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(getTimeoutConnectionRequest()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(getTimeoutResponse()))
+                        .setConnectionKeepAlive(TimeValue.ofMilliseconds(getConnectionKeepAlive()))
+                        .setRedirectsEnabled(isRedirectsEnabled())
+                        .build())
+                .setRetryStrategy(retryStrategy)
+                //the client must not close the shared pool
+                .setConnectionManager(getConnectionManager())
+                .setConnectionManagerShared(true);
+    }
+
+    private void configureProxy(HttpClientBuilder builder, BasicCredentialsProvider credentialsProvider, String url) {
+        ProxyConfig proxyConfig = getProxyConfig();
+        if (proxyConfig == null) {
+            return;
+        }
+        String protocol = URI.create(url).getScheme();
+        ProxyProperties proxyProperties;
+        if (Protocol.isHttps(protocol) && proxyConfig.getHttpsProperties() != null) {
+            proxyProperties = proxyConfig.getHttpsProperties();
+        } else if (Protocol.isHttp(protocol) && proxyConfig.getHttpProperties() != null) {
+            proxyProperties = proxyConfig.getHttpProperties();
+        } else {
+            return;
+        }
+        String host = proxyProperties.getHost();
+        int port = proxyProperties.getPort();
+        if (!Strings.isStringEmpty(proxyProperties.getUser()) && proxyProperties.getPassword() != null
+                && proxyProperties.getPassword().length > 0) {
+            credentialsProvider.setCredentials(new AuthScope(host, port),
+                    new UsernamePasswordCredentials(proxyProperties.getUser(), proxyProperties.getPassword()));
+        }
+        HttpHost proxy = new HttpHost(proxyProperties.getScheme(), host, port);
+        Collection<String> excludedHosts = proxyProperties.getExcludedHosts();
+        if (excludedHosts != null && !excludedHosts.isEmpty()) {
+            builder.setRoutePlanner(new DefaultProxyRoutePlanner(proxy) {
+                @Override
+                protected HttpHost determineProxy(HttpHost target, HttpContext context) throws HttpException {
+                    String targetHost = target.getHostName().toLowerCase();
+                    for (String excludedHost : excludedHosts) {
+                        String excluded = excludedHost.toLowerCase();
+                        if (targetHost.equals(excluded) || excluded.equals("*")
+                                || (excluded.startsWith("*.") && targetHost.endsWith(excluded.substring(1)))) {
+                            return null;
+                        }
+                    }
+                    return super.determineProxy(target, context);
+                }
+            });
+        }
+        builder.setProxy(proxy);
+    }
+
+    /**
+     * The shared pool, set up like DSS sets up its per-request connection managers. All loaders have the same
+     * connection settings, so the first one to ask creates it.
+     */
+    private PoolingHttpClientConnectionManager getConnectionManager() {
+        synchronized (PooledDataLoader.class) {
+            if (connectionManager == null) {
+                SSLContextBuilder sslContextBuilder = SSLContextBuilder.create();
+                try {
+                    if (getTrustStrategy() != null) {
+                        sslContextBuilder.loadTrustMaterial(null, getTrustStrategy());
+                    }
+                    connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                            .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                                    .setSslContext(sslContextBuilder.build())
+                                    .setTlsVersions(getSupportedSSLProtocols())
+                                    .setCiphers(getSupportedSSLCipherSuites())
+                                    .setHostnameVerifier(getHostnameVerifier())
+                                    .build())
+                            .setDefaultSocketConfig(SocketConfig.custom()
+                                    .setSoTimeout(Timeout.ofMilliseconds(getTimeoutSocket()))
+                                    .build())
+                            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                    .setConnectTimeout(Timeout.ofMilliseconds(getTimeoutConnection()))
+                                    .setTimeToLive(TimeValue.ofMilliseconds(getConnectionTimeToLive()))
+                                    .build())
+                            .setMaxConnTotal(getConnectionsMaxTotal())
+                            .setMaxConnPerRoute(getConnectionsMaxPerRoute())
+                            .build();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("could not set up TLS for the connection pool", e);
+                }
+            }
+            return connectionManager;
+        }
+    }
+
+    /**
+     * Connection pool usage, e.g. for the status endpoint
+     */
+    public static Map<String, Object> poolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        PoolingHttpClientConnectionManager pool;
+        synchronized (PooledDataLoader.class) {
+            if (connectionManager == null) {
+                return stats;
+            }
+            pool = connectionManager;
+        }
+        stats.put("total", toMap(pool.getTotalStats()));
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : pool.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), toMap(pool.getStats(route)));
+        }
+        stats.put("routes", routes);
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(PoolStats poolStats) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leased", poolStats.getLeased());
+        stats.put("available", poolStats.getAvailable());
+        stats.put("pending", poolStats.getPending());
+        stats.put("max", poolStats.getMax());
+        return stats;
+    }
+
+    static ProxyConfig retrieveProxyConfig() {
+        ProxyConfig proxyConfig = new ProxyConfig();
+
+        String httpProxyHost = System.getProperty(HTTP_PROXY_HOST);
+        String httpProxyPort = System.getProperty(HTTP_PROXY_PORT);
+        if (!Strings.isStringEmpty(httpProxyHost) && !Strings.isStringEmpty(httpProxyPort)) {
+            try {
+                int port = Integer.parseInt(httpProxyPort);
+                ProxyProperties proxyProperties = new ProxyProperties();
+                proxyProperties.setHost(httpProxyHost);
+                proxyProperties.setPort(port);
+                proxyConfig.setHttpProperties(proxyProperties);
+                log.debug("Http proxy present");
+            } catch (NumberFormatException e) {
+                log.error("ERROR : proxy http Port is not a number");
+            }
+        }
+
+        // set Proxy HTTPS if present
+        String httpsProxyHost = System.getProperty(HTTPS_PROXY_HOST);
+        String httpsProxyPort = System.getProperty(HTTPS_PROXY_PORT);
+        if (!Strings.isStringEmpty(httpsProxyHost) && !Strings.isStringEmpty(httpsProxyPort)) {
+            try {
+                int port = Integer.parseInt(httpsProxyPort);
+                ProxyProperties proxyProperties = new ProxyProperties();
+                proxyProperties.setHost(httpsProxyHost);
+                proxyProperties.setPort(port);
+                proxyConfig.setHttpsProperties(proxyProperties);
+                log.debug("Https proxy present");
+            } catch (NumberFormatException e) {
+                log.error("ERROR : proxy https Port is not a number");
+            }
+        }
+        return proxyConfig;
+    }
+}
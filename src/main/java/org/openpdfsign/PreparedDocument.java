@@ -0,0 +1,109 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The document to be signed, after the optional blank page has been appended, together with the
+ * (1-based) page of the visible signature.
+ * The PDF is parsed at most once for this: page count, page box and the appended page all come from the same parse.
+ * In bounded-memory mode, PDFBox buffers in scratch files above the memory limit and the document with the
+ * appended page is written to a temporary file, which is removed on {@link #close()}.
+ */
+@Slf4j
+@Getter
+public class PreparedDocument implements Closeable {
+    private final DSSDocument document;
+    private final int pageCount;
+    private final int signaturePage;
+    private final Path tempFile;
+
+    private PreparedDocument(DSSDocument document, int pageCount, int signaturePage, Path tempFile) {
+        this.document = document;
+        this.pageCount = pageCount;
+        this.signaturePage = signaturePage;
+        this.tempFile = tempFile;
+    }
+
+    public static PreparedDocument prepare(DSSDocument toSignDocument, SignatureParameters params) throws IOException {
+        return prepare(toSignDocument, params, -1, null);
+    }
+
+    /**
+     * @param memoryLimit maximum main memory in bytes used by PDFBox, -1 for unrestricted
+     * @param tempDirectory directory for scratch and temporary files, if memory is restricted
+     */
+    public static PreparedDocument prepare(DSSDocument toSignDocument, SignatureParameters params, long memoryLimit, Path tempDirectory) throws IOException {
+        int page = params.getPage();
+        boolean addPage = params.getAddPage() != null && params.getAddPage();
+        if (!addPage && page >= 0) {
+            //nothing to derive from the document, DSS is the only one parsing it
+            return new PreparedDocument(toSignDocument, -1, page, null);
+        }
+
+        MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupMainMemoryOnly();
+        if (memoryLimit >= 0) {
+            memoryUsageSetting = MemoryUsageSetting.setupMixed(memoryLimit);
+            memoryUsageSetting.setTempDir(tempDirectory.toFile());
+        }
+        String password = StringUtils.isEmpty(params.getPdfPassphrase()) ? "" : params.getPdfPassphrase();
+
+        try (InputStream is = toSignDocument.openStream();
+             PDDocument pdDocument = PDDocument.load(is, password, memoryUsageSetting)) {
+            int pageCount = pdDocument.getNumberOfPages();
+            log.debug("PDF page count: " + pageCount);
+
+            DSSDocument document = toSignDocument;
+            Path tempFile = null;
+            //add new page, if user requested
+            if (addPage) {
+                PDPage newPage = new PDPage(pdDocument.getPage(pageCount - 1).getMediaBox());
+                pdDocument.addPage(newPage);
+                Set<COSDictionary> cosSet = new HashSet<>();
+                cosSet.add(newPage.getCOSObject().getCOSDictionary(COSName.PARENT));
+                if (memoryLimit >= 0) {
+                    tempFile = Files.createTempFile(tempDirectory, "prepared", ".pdf");
+                    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                        pdDocument.saveIncremental(os, cosSet);
+                    }
+                    document = new FileDocument(tempFile.toFile());
+                } else {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    pdDocument.saveIncremental(bos, cosSet);
+                    document = new InMemoryDocument(bos.toByteArray());
+                }
+                pageCount++;
+            }
+
+            int signaturePage = page < 0 ? pageCount + (1 + page) : page;
+            return new PreparedDocument(document, pageCount, signaturePage, tempFile);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tempFile != null) {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
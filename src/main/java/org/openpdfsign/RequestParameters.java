@@ -0,0 +1,112 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import eu.europa.esig.dss.model.DSSDocument;
+import org.apache.commons.beanutils.PropertyUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Signature parameters given per request, as query parameters (e.g. {@code ?page=-1&signature-reason=Invoice})
+ * or as headers (e.g. {@code X-Open-Pdf-Sign-Page: -1}); the PDF passphrase only as header. Names are those of the
+ * JSON/YAML configuration.
+ * Only parameters concerning the signature itself may be given; files, keys and TSA sources stay as configured.
+ */
+public class RequestParameters {
+    public static final String HEADER_PREFIX = "X-Open-Pdf-Sign-";
+    static final Set<String> ALLOWED = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "page", "top", "left", "width", "hint", "no-hint", "image-only",
+            "label-hint", "label-signee", "label-timestamp", "timezone", "certification",
+            "signature-reason", "signature-location", "signature-contact", "add-page", "pdf-passphrase",
+            "timestamp", "baseline-lt", "baseline-lta")));
+
+    //applied to each signature, not part of a session
+    static final Set<String> PER_DOCUMENT = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "page", "top", "left", "add-page", "signature-reason", "signature-location", "signature-contact",
+            "pdf-passphrase")));
+
+    //secrets are not taken from the URL, which ends up in access logs and proxy logs
+    static final Set<String> HEADER_ONLY = Collections.singleton("pdf-passphrase");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Collect the signature parameters of a request; headers take precedence over query parameters
+     */
+    public static Map<String, String> fromRequest(HttpServletRequest req) {
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String name : ALLOWED) {
+            String value = HEADER_ONLY.contains(name) ? null : req.getParameter(name);
+            if (req.getHeader(HEADER_PREFIX + name) != null) {
+                value = req.getHeader(HEADER_PREFIX + name);
+            }
+            if (value != null) {
+                overrides.put(name, value);
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * The overrides which are applied to each signature, see {@link SigningSession#sign(DSSDocument, SignatureParameters)}
+     */
+    public static Map<String, String> perDocument(Map<String, String> overrides) {
+        Map<String, String> perDocument = new LinkedHashMap<>(overrides);
+        perDocument.keySet().retainAll(PER_DOCUMENT);
+        return perDocument;
+    }
+
+    /**
+     * The overrides which need a session of their own
+     */
+    public static Map<String, String> perSession(Map<String, String> overrides) {
+        Map<String, String> perSession = new LinkedHashMap<>(overrides);
+        perSession.keySet().removeAll(PER_DOCUMENT);
+        return perSession;
+    }
+
+    /**
+     * The server's parameters with the given overrides applied
+     * @throws IllegalArgumentException if a parameter is not allowed or has an invalid value
+     */
+    public static SignatureParameters apply(SignatureParameters defaults, Map<String, String> overrides) {
+        ObjectNode node = MAPPER.createObjectNode();
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            if (!ALLOWED.contains(override.getKey())) {
+                throw new IllegalArgumentException("parameter " + override.getKey() + " cannot be given per request");
+            }
+            node.put(override.getKey(), override.getValue());
+        }
+        try {
+            SignatureParameters params = new SignatureParameters();
+            PropertyUtils.copyProperties(params, defaults);
+            params = MAPPER.readerForUpdating(params).readValue(node);
+            if (params.getCertification() == null) {
+                throw new IllegalArgumentException("invalid certification " + overrides.get("certification"));
+            }
+            if (params.getTimezone() != null) {
+                try {
+                    ZoneId.of(params.getTimezone());
+                } catch (DateTimeException e) {
+                    throw new IllegalArgumentException("invalid timezone " + params.getTimezone());
+                }
+            }
+            return params;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("invalid signature parameters: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.revocation.RevocationToken;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLSource;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLToken;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the revocation data (OCSP, or CRL if there is no OCSP responder) of the signing certificate chains
+ * in the background, ahead of expiry. Signing requests then find fresh data in {@link CachingOCSPSource} and {@link CrlStore}.
+ */
+@Slf4j
+public class RevocationPrefetcher {
+    private static final long DEFAULT_LEAD_TIME = 600;
+    private static final long RETRY_MILLIS = 60 * 1000;
+    private static RevocationPrefetcher INSTANCE;
+
+    private final CachingOCSPSource ocspSource;
+    private final CRLSource crlSource;
+    private final long leadMillis;
+    private final Map<String, PrefetchState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "revocation-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    RevocationPrefetcher(CachingOCSPSource ocspSource, CRLSource crlSource, long leadMillis) {
+        this.ocspSource = ocspSource;
+        this.crlSource = crlSource;
+        this.leadMillis = leadMillis;
+    }
+
+    public static synchronized RevocationPrefetcher getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new RevocationPrefetcher(CachingOCSPSource.getInstance(), CrlStore.getInstance(),
+                    Configuration.getInstance().getProperties().getLong("revocation_prefetch_lead_time", DEFAULT_LEAD_TIME) * 1000);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Start prefetching for the certificate chains of all sessions which embed revocation data (LT/LTA)
+     */
+    public void start(Collection<SigningSession> sessions) {
+        for (SigningSession session : sessions) {
+            if (session.getSignatureLevel() != SignatureLevel.PAdES_BASELINE_LT &&
+                    session.getSignatureLevel() != SignatureLevel.PAdES_BASELINE_LTA) {
+                continue;
+            }
+            List<CertificateToken> chain = session.getCertificateChain();
+            for (int i = 0; i < chain.size() - 1; i++) {
+                CertificateToken certificate = chain.get(i);
+                CertificateToken issuer = chain.get(i + 1);
+                if (certificate.isSelfSigned() || !certificate.isSignedBy(issuer)) {
+                    continue;
+                }
+                if (states.putIfAbsent(certificate.getDSSIdAsString(), new PrefetchState(certificate)) == null) {
+                    scheduler.execute(() -> schedule(certificate, issuer, initialRefresh(certificate, issuer)));
+                }
+            }
+        }
+    }
+
+    private void schedule(CertificateToken certificate, CertificateToken issuer, long next) {
+        scheduler.schedule(() -> schedule(certificate, issuer, refresh(certificate, issuer)),
+                Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A response cached on disk before a restart is used until it is due for refresh
+     */
+    long initialRefresh(CertificateToken certificate, CertificateToken issuer) {
+        OCSPToken cached = ocspSource.getCachedToken(certificate, issuer);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.getThisUpdate() != null) {
+            Date expiry = ocspSource.getExpiry(cached);
+            if (expiry.getTime() - leadMillis > now) {
+                PrefetchState state = states.computeIfAbsent(certificate.getDSSIdAsString(), id -> new PrefetchState(certificate));
+                state.success(now, "ocsp", cached.getThisUpdate(), expiry);
+                state.nextRefresh = new Date(expiry.getTime() - leadMillis);
+                return expiry.getTime() - leadMillis;
+            }
+        }
+        return refresh(certificate, issuer);
+    }
+
+    /**
+     * Refresh the revocation data of one certificate
+     * @return the time of the next refresh
+     */
+    long refresh(CertificateToken certificate, CertificateToken issuer) {
+        PrefetchState state = states.computeIfAbsent(certificate.getDSSIdAsString(), id -> new PrefetchState(certificate));
+        long now = System.currentTimeMillis();
+        long next;
+        try {
+            RevocationToken<?> token = ocspSource.refresh(certificate, issuer);
+            Date expiry;
+            if (token != null) {
+                expiry = ocspSource.getExpiry((OCSPToken) token);
+            } else {
+                //no OCSP responder, use CRL; the store keeps it up to date
+                token = crlSource.getRevocationToken(certificate, issuer);
+                if (token == null) {
+                    throw new IllegalStateException("no OCSP response and no CRL available");
+                }
+                expiry = token.getNextUpdate();
+            }
+            state.success(now, token instanceof CRLToken ? "crl" : "ocsp", token.getThisUpdate(), expiry);
+            next = expiry != null ? Math.max(now + RETRY_MILLIS, expiry.getTime() - leadMillis) : now + RETRY_MILLIS;
+            log.debug("Revocation data for " + certificate.getSubject().getPrettyPrintRFC2253() + " refreshed");
+        } catch (Exception e) {
+            log.warn("could not refresh revocation data for " + certificate.getSubject().getPrettyPrintRFC2253() + ": " + e.getMessage());
+            state.failure(now, e.getMessage());
+            next = now + RETRY_MILLIS;
+        }
+        state.nextRefresh = new Date(next);
+        return next;
+    }
+
+    /**
+     * Outcome and age of the last refresh per certificate, e.g. for the status endpoint
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (PrefetchState state : states.values()) {
+            snapshot.put(state.subject, state.snapshot(now));
+        }
+        return snapshot;
+    }
+
+    private static class PrefetchState {
+        private final String subject;
+        private volatile String source;
+        private volatile String outcome = "pending";
+        private volatile String error;
+        private volatile Date lastAttempt;
+        private volatile Date thisUpdate;
+        private volatile Date expiry;
+        private volatile Date nextRefresh;
+
+        PrefetchState(CertificateToken certificate) {
+            this.subject = certificate.getSubject().getPrettyPrintRFC2253();
+        }
+
+        void success(long now, String source, Date thisUpdate, Date expiry) {
+            this.lastAttempt = new Date(now);
+            this.outcome = "ok";
+            this.error = null;
+            this.source = source;
+            this.thisUpdate = thisUpdate;
+            this.expiry = expiry;
+        }
+
+        void failure(long now, String error) {
+            this.lastAttempt = new Date(now);
+            this.outcome = "error";
+            this.error = error;
+        }
+
+        Map<String, Object> snapshot(long now) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("outcome", outcome);
+            snapshot.put("error", error);
+            snapshot.put("source", source);
+            snapshot.put("lastAttempt", lastAttempt);
+            snapshot.put("ageSeconds", thisUpdate != null ? (now - thisUpdate.getTime()) / 1000 : null);
+            snapshot.put("expiry", expiry);
+            snapshot.put("nextRefresh", nextRefresh);
+            return snapshot;
+        }
+    }
+}
@@ -12,8 +12,10 @@ public class ServerConfigHolder {
     private static ServerConfigHolder INSTANCE = new ServerConfigHolder();
 
     private CommandLineArguments params;
-    private Map<String, byte[]> keystores = new HashMap<>();
-    private char[] keystorePassphrase;
+    private KeyRegistry keys = new KeyRegistry();
+    private Map<String, SigningSession> sessions = new HashMap<>();
+    private SigningExecutor executor;
+    private long queueTimeoutMillis;
 
     public static ServerConfigHolder getInstance() {
         return INSTANCE;
@@ -0,0 +1,83 @@
+package org.openpdfsign;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LRU cache of {@link SigningSession}s for per-request signature parameters (see {@link RequestParameters}).
+ * Requests without parameters use the session prepared on server start. Parameters of the single document
+ * (page, position, reason, ...) are applied per signature and do not make up a session of their own.
+ * Sessions hold no resources besides memory (temporary files go to a directory shared by all sessions),
+ * so evicted sessions are simply dropped, requests still using them finish normally.
+ */
+@Slf4j
+public class SessionCache {
+    private static final int DEFAULT_SIZE = 32;
+    private static SessionCache INSTANCE;
+
+    private final Map<SessionKey, SigningSession> sessions;
+
+    SessionCache(int maxEntries) {
+        this.sessions = new LinkedHashMap<SessionKey, SigningSession>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SessionKey, SigningSession> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static synchronized SessionCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new SessionCache(Configuration.getInstance().getProperties().getInt("session_cache_size", DEFAULT_SIZE));
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Get the session for the given key and signature parameters, preparing it if it is not cached yet
+     * @throws IllegalArgumentException if the parameters are invalid
+     */
+    public SigningSession getSession(String keyName, Map<String, String> overrides) throws IOException {
+        ServerConfigHolder config = ServerConfigHolder.getInstance();
+        Map<String, String> sessionOverrides = RequestParameters.perSession(overrides);
+        if (config.getParams().getPage() == null && overrides.containsKey("page")) {
+            //the page itself is given per document, but a visible signature needs a session of its own
+            sessionOverrides.put("page", "1");
+        }
+        if (sessionOverrides.isEmpty()) {
+            return config.getSessions().get(keyName);
+        }
+        SessionKey key = new SessionKey(keyName, new TreeMap<>(sessionOverrides));
+        SigningSession session;
+        synchronized (sessions) {
+            session = sessions.get(key);
+        }
+        if (session == null) {
+            //prepared outside the lock, concurrent misses for the same parameters prepare the same session
+            log.debug("Preparing signing session for " + keyName + " with " + sessionOverrides.keySet());
+            SignatureParameters params = RequestParameters.apply(config.getParams(), sessionOverrides);
+            session = new Signer().newSession(config.getKeys().get(keyName), params);
+            synchronized (sessions) {
+                sessions.put(key, session);
+            }
+        }
+        return session;
+    }
+
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    @Value
+    private static class SessionKey {
+        String keyName;
+        Map<String, String> overrides;
+    }
+}
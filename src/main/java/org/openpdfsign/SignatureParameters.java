@@ -101,6 +101,10 @@ public class SignatureParameters {
     @JsonProperty("add-page")
     private Boolean addPage;
 
+    @Parameter(required = false, names={"--memory-limit"}, description = "maximum heap memory per document in MB; larger documents are processed in temporary files")
+    @JsonProperty("memory-limit")
+    private Integer memoryLimit;
+
     public static enum CertificationMode {
         NOT_CERTIFIED("not-certified"),
         CERTIFIED_NO_CHANGE_PERMITTED("certified-no-change-permitted"),
@@ -7,11 +7,8 @@ import eu.europa.esig.dss.diagnostic.DiagnosticData;
 import eu.europa.esig.dss.model.DSSDocument;
 import eu.europa.esig.dss.model.FileDocument;
 import eu.europa.esig.dss.pades.signature.PAdESService;
-import eu.europa.esig.dss.service.crl.OnlineCRLSource;
-import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
 import eu.europa.esig.dss.simplereport.SimpleReport;
 import eu.europa.esig.dss.spi.x509.CommonTrustedCertificateSource;
-import eu.europa.esig.dss.spi.x509.aia.DefaultAIASource;
 import eu.europa.esig.dss.validation.CommonCertificateVerifier;
 import eu.europa.esig.dss.validation.SignedDocumentValidator;
 import eu.europa.esig.dss.validation.reports.Reports;
@@ -38,19 +35,16 @@ public class SignatureVerifier {
         PAdESService service = new PAdESService(commonCertificateVerifier);
 
         // Capability to download resources from AIA
-        commonCertificateVerifier.setAIASource(new DefaultAIASource());
+        commonCertificateVerifier.setAIASource(CachingAIASource.getInstance());
 
-        // Capability to request OCSP Responders
-        commonCertificateVerifier.setOcspSource(new OnlineOCSPSource());
+        // Capability to request OCSP Responders, responses are cached until their nextUpdate
+        commonCertificateVerifier.setOcspSource(CachingOCSPSource.getInstance());
 
-        // Capability to download CRL
-        commonCertificateVerifier.setCrlSource(new OnlineCRLSource());
+        // Capability to download CRL, kept in the local CRL store
+        commonCertificateVerifier.setCrlSource(CrlStore.getInstance());
 
-        // Create an instance of a trusted certificate source
-        CommonTrustedCertificateSource trustedCertSource = new CommonTrustedCertificateSource();
-
-        // import the keystore as trusted
-        trustedCertSource.importAsTrusted(TrustedCertificatesLoader.getDefaults());
+        // The trusted certificate source of the current trust anchor snapshot, built once per process
+        CommonTrustedCertificateSource trustedCertSource = TrustedCertificatesLoader.getTrustedSource();
 
         // Add trust anchors (trusted list, keystore,...) to a list of trusted certificate sources
         // Hint : use method {@code CertificateVerifier.setTrustedCertSources(certSources)} in order to overwrite the existing list
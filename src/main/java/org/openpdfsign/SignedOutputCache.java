@@ -0,0 +1,304 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.europa.esig.dss.model.DSSDocument;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Disk cache of signed documents for the GET endpoint (nginx), so a popular static PDF is signed once and then
+ * served as a file. Entries are keyed by the file (path, size, modification time and file id), the key and the
+ * signature parameters of the session. The cache is bounded in size, the least recently used entries are removed
+ * first; optionally, entries expire a given time after they were signed, e.g. to keep time stamps recent.
+ * Cached documents are named signed-&lt;key&gt;.pdf; other files in the directory are left alone.
+ */
+@Slf4j
+public class SignedOutputCache {
+    //only files named like this are read, replaced or removed in the directory
+    private static final String PREFIX = "signed-";
+    private static final String SUFFIX = ".pdf";
+    private static final Pattern ENTRY = Pattern.compile(PREFIX + "[0-9a-f]{64}" + Pattern.quote(SUFFIX));
+    private static final Pattern TEMPORARY = Pattern.compile(PREFIX + "[0-9a-f]{64}\\.[0-9a-f-]{36}\\.tmp");
+    private static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+    private static SignedOutputCache INSTANCE;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path directory;
+    private final long maxSize;
+    private final long maxAgeMillis;
+    //access order: the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<SigningSession, String> sessionFingerprints = Collections.synchronizedMap(new WeakHashMap<>());
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param directory where signed documents are kept, or null to disable the cache
+     * @param maxAgeMillis entries expire this long after they were signed, or 0 for no expiry
+     */
+    SignedOutputCache(Path directory, long maxSize, long maxAgeMillis) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public static synchronized SignedOutputCache getInstance() {
+        if (INSTANCE == null) {
+            String directory = Configuration.getInstance().getProperties().getString("signed_cache_dir", null);
+            INSTANCE = new SignedOutputCache(directory != null ? Paths.get(directory) : null,
+                    Configuration.getInstance().getProperties().getLong("signed_cache_max_size", DEFAULT_MAX_SIZE),
+                    Configuration.getInstance().getProperties().getLong("signed_cache_max_age", 0) * 1000);
+            INSTANCE.load();
+        }
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Pick up the entries of a previous run, oldest first
+     */
+    synchronized void load() {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+                for (Path file : stream) {
+                    String name = file.getFileName().toString();
+                    if (ENTRY.matcher(name).matches()) {
+                        files.add(file);
+                    } else if (TEMPORARY.matcher(name).matches()) {
+                        //left over from an interrupted write
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+            for (Path file : files) {
+                attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+            }
+            files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attr = attributes.get(file);
+                add(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), new Entry(attr.size(), attr.lastModifiedTime().toMillis()));
+            }
+            evict();
+            log.debug("Loaded " + entries.size() + " signed documents (" + size + " bytes) from " + directory);
+        } catch (IOException e) {
+            log.warn("could not load signed document cache from " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The cache key of the given file, signed by the given session
+     */
+    public String key(Path file, String keyName, SigningSession session) throws IOException {
+        String fingerprint = sessionFingerprints.get(session);
+        if (fingerprint == null) {
+            StringBuilder builder = new StringBuilder(session.getPrivateKey().getCertificate().getDSSIdAsString());
+            builder.append('\n').append(mapper.writeValueAsString(session.getParams()));
+            if (session.getParams().getImageFile() != null && Files.exists(Paths.get(session.getParams().getImageFile()))) {
+                Path image = Paths.get(session.getParams().getImageFile());
+                builder.append('\n').append(Files.size(image)).append('\n').append(Files.getLastModifiedTime(image).toMillis());
+            }
+            fingerprint = builder.toString();
+            sessionFingerprints.put(session, fingerprint);
+        }
+        return key(file, keyName, fingerprint);
+    }
+
+    static String key(Path file, String keyName, String sessionFingerprint) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        //the file id (device and inode, where available) changes when a file is replaced by renaming
+        String source = file.toAbsolutePath().normalize() + "\n" + attributes.size() + "\n" +
+                attributes.lastModifiedTime().toMillis() + "\n" + attributes.fileKey() + "\n" +
+                keyName + "\n" + sessionFingerprint;
+        try {
+            StringBuilder key = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Open the cached signed document, or return null if there is none (or it expired).
+     * The returned channel stays readable if the entry is evicted meanwhile.
+     */
+    public synchronized FileChannel open(String key) throws IOException {
+        if (!lookup(key)) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(file(key), StandardOpenOption.READ);
+            hits++;
+            return channel;
+        } catch (NoSuchFileException e) {
+            //removed from outside
+            remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Link (or, on another file system, copy) the cached signed document to the target file, which stays
+     * when the entry is evicted
+     * @return false if there is no such entry (or it expired)
+     */
+    public synchronized boolean link(String key, Path target) throws IOException {
+        if (!lookup(key)) {
+            return false;
+        }
+        try {
+            try {
+                Files.createLink(target, file(key));
+            } catch (NoSuchFileException e) {
+                throw e;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(file(key), target);
+            }
+            hits++;
+            return true;
+        } catch (NoSuchFileException e) {
+            remove(key);
+            misses++;
+            return false;
+        }
+    }
+
+    /**
+     * Whether there is an entry for the key; expired entries are removed, a miss is counted
+     */
+    private boolean lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && maxAgeMillis > 0 && System.currentTimeMillis() - entry.created > maxAgeMillis) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Store a signed document of the given original file
+     */
+    public void put(String key, SignedOutputWriter.Original original, DSSDocument signedDocument) throws IOException {
+        Path temporary = directory.resolve(PREFIX + key + "." + UUID.randomUUID() + ".tmp");
+        try {
+            SignedOutputWriter.write(original, signedDocument, temporary);
+            long length = Files.size(temporary);
+            if (length > maxSize) {
+                log.debug("signed " + original.getPath() + " is larger than the cache");
+                return;
+            }
+            synchronized (this) {
+                Files.move(temporary, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Entry previous = entries.remove(key);
+                if (previous != null) {
+                    size -= previous.size;
+                }
+                add(key, new Entry(length, System.currentTimeMillis()));
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", isEnabled());
+        snapshot.put("entries", entries.size());
+        snapshot.put("size", size);
+        snapshot.put("maxSize", maxSize);
+        snapshot.put("hits", hits);
+        snapshot.put("misses", misses);
+        snapshot.put("evictions", evictions);
+        return snapshot;
+    }
+
+    private void add(String key, Entry entry) {
+        entries.put(key, entry);
+        size += entry.size;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue().size;
+            evictions++;
+            delete(eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.size;
+            delete(key);
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            log.debug("could not remove cached " + key + ": " + e.getMessage());
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(PREFIX + key + SUFFIX);
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long created;
+
+        Entry(long size, long created) {
+            this.size = size;
+            this.created = created;
+        }
+    }
+}
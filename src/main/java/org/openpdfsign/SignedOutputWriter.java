@@ -0,0 +1,190 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Writes a signed document, making use of the fact that a PAdES signature is an incremental update:
+ * the original file is an unchanged prefix of the signed document. The prefix is transferred from the
+ * original file by the channel (without passing the JVM heap, where possible), only the appended revision
+ * is copied from the signed document. The original is pinned before signing (see {@link #pin(Path)}) and the
+ * prefix is only taken from it if size, modification time and file id are unchanged and its first and last
+ * 64 KiB match the signed document; the content in between is not read twice.
+ */
+@Slf4j
+public class SignedOutputWriter {
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+    //compared at the start and at the end of the original
+    private static final int WINDOW = 64 * 1024;
+
+    /**
+     * Pin the original file, before it is signed
+     */
+    public static Original pin(Path original) throws IOException {
+        FileChannel channel = FileChannel.open(original, StandardOpenOption.READ);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(original, BasicFileAttributes.class);
+            return new Original(original, channel, channel.size(), attributes.lastModifiedTime(), attributes.fileKey());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static void write(Path original, DSSDocument signedDocument, Path outputFile) throws IOException {
+        try (Original pinned = pin(original)) {
+            write(pinned, signedDocument, outputFile);
+        }
+    }
+
+    public static void write(Path original, DSSDocument signedDocument, OutputStream out) throws IOException {
+        try (Original pinned = pin(original)) {
+            write(pinned, signedDocument, out);
+        }
+    }
+
+    public static void write(Original original, DSSDocument signedDocument, Path outputFile) throws IOException {
+        //signing in place: the original must not be truncated while it is still read
+        boolean inPlace = Files.exists(outputFile) && Files.isSameFile(original.path, outputFile);
+        try (InputStream signed = signedDocument.openStream()) {
+            if (!inPlace && original.isPrefixOf(signed)) {
+                try (FileChannel out = FileChannel.open(outputFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    transfer(original.channel, out);
+                    IOUtils.copy(signed, Channels.newOutputStream(out));
+                }
+                //changed while it was copied
+                if (original.isUnchanged()) {
+                    return;
+                }
+            }
+        }
+        log.debug("original is no prefix of the signed document, writing full copy");
+        signedDocument.save(outputFile.toAbsolutePath().toString());
+    }
+
+    public static void write(Original original, DSSDocument signedDocument, OutputStream out) throws IOException {
+        try (InputStream signed = signedDocument.openStream()) {
+            if (!original.isPrefixOf(signed)) {
+                log.debug("original is no prefix of the signed document, writing full copy");
+                signedDocument.writeTo(out);
+                return;
+            }
+            write(original.channel, out);
+            IOUtils.copy(signed, out);
+        }
+    }
+
+    /**
+     * Write the whole file behind the channel, e.g. a cached signed document
+     */
+    public static void write(FileChannel in, OutputStream out) throws IOException {
+        if (out instanceof HttpOutput) {
+            //jetty writes mapped buffers to the socket as they are
+            long size = in.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position));
+                ((HttpOutput) out).write(chunk);
+            }
+        } else {
+            transfer(in, Channels.newChannel(out));
+        }
+    }
+
+    private static void transfer(FileChannel in, WritableByteChannel out) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+            position += in.transferTo(position, size - position, out);
+        }
+    }
+
+    /**
+     * An original file pinned at signing time: the open channel keeps its content if the file is replaced,
+     * size, modification time and file id show whether it was changed in place
+     */
+    public static class Original implements Closeable {
+        private final Path path;
+        private final FileChannel channel;
+        private final long size;
+        private final FileTime lastModified;
+        private final Object fileKey;
+
+        private Original(Path path, FileChannel channel, long size, FileTime lastModified, Object fileKey) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        boolean isUnchanged() throws IOException {
+            if (channel.size() != size) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().equals(lastModified) &&
+                    Objects.equals(attributes.fileKey(), fileKey);
+        }
+
+        /**
+         * Whether the original is unchanged and the signed document starts with its first and last window.
+         * The signed stream is positioned behind the original content.
+         */
+        boolean isPrefixOf(InputStream signed) throws IOException {
+            if (!isUnchanged()) {
+                return false;
+            }
+            long head = Math.min(WINDOW, size);
+            long tail = Math.max(head, size - WINDOW);
+            try {
+                if (!matches(signed, 0, (int) head)) {
+                    return false;
+                }
+                IOUtils.skipFully(signed, tail - head);
+                return matches(signed, tail, (int) (size - tail));
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        private boolean matches(InputStream signed, long position, int length) throws IOException {
+            ByteBuffer original = ByteBuffer.allocate(length);
+            while (original.hasRemaining()) {
+                if (channel.read(original, position + original.position()) < 0) {
+                    return false;
+                }
+            }
+            byte[] content = new byte[length];
+            IOUtils.readFully(signed, content);
+            return Arrays.equals(original.array(), content);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
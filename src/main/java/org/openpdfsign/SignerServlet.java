@@ -1,21 +1,31 @@
 package org.openpdfsign;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class SignerServlet extends HttpServlet {
+    private static final SingleFlight<String, SharedOutput> FLIGHTS = new SingleFlight<>();
+
     ObjectMapper mapper = new ObjectMapper();
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
@@ -48,10 +58,10 @@ public class SignerServlet extends HttpServlet {
         if (headers.contains("Host")) {
             //try to find matching key, or default
             String hostname = req.getHeader("Host");
-            if (ServerConfigHolder.getInstance().getKeystores().containsKey(hostname)) {
+            if (ServerConfigHolder.getInstance().getSessions().containsKey(hostname)) {
                 keyName = hostname;
             }
-            else if (ServerConfigHolder.getInstance().getKeystores().containsKey("_")) {
+            else if (ServerConfigHolder.getInstance().getSessions().containsKey("_")) {
                 keyName = "_";
             }
             else {
@@ -70,12 +80,22 @@ public class SignerServlet extends HttpServlet {
             return;
         }
 
-        Signer s = new Signer();
-        res.setStatus(HttpServletResponse.SC_OK);
-        res.setHeader("Content-Disposition", "attachment; filename=\"" + path.getFileName().toString() + "\"");
-        s.signPdf(path, null, ServerConfigHolder.getInstance().getKeystores().get(keyName), ServerConfigHolder.getInstance().getKeystorePassphrase(), res.getOutputStream(), ServerConfigHolder.getInstance().getParams());
-        log.debug("signed " + path + " with " + keyName);
-        res.getOutputStream().flush();
+        SignedOutputCache cache = SignedOutputCache.getInstance();
+        SigningSession session = keyName != null ? ServerConfigHolder.getInstance().getSessions().get(keyName) : null;
+        if (session != null) {
+            //same file version, key and parameters: same signed document
+            String signKey = cache.key(path, keyName, session);
+            //a document signed before is served from the cache, without taking a signing slot
+            if (cache.isEnabled() && (AccelRedirect.getInstance().isEnabled() ?
+                    redirectCached(res, path, signKey) : serveCached(res, path, signKey))) {
+                log.debug("served signed " + path + " from cache");
+                return;
+            }
+            signCoalesced(req, res, path, keyName, signKey);
+            return;
+        }
+
+        sign(req, res, path, keyName);
     }
 
     @Override
@@ -84,14 +104,24 @@ public class SignerServlet extends HttpServlet {
         Path path;
         String keyPath;
         Map<String, String> errorMap = new HashMap<>();
-        if (req.getContentType().equals("application/json")) {
-            String requestAsJson = req.getReader().lines().collect(Collectors.joining());
+        String contentType = req.getContentType() == null ? "" : req.getContentType().toLowerCase(Locale.ROOT);
+        if (contentType.startsWith("application/pdf") || contentType.startsWith("application/octet-stream")) {
+            //the document itself is the request body
+            signUpload(req, res);
+            return;
+        }
+        if (contentType.startsWith("multipart/mixed")) {
+            //many documents in one request
+            signBatch(req, res);
+            return;
+        }
+        if (contentType.startsWith("application/json")) {
             try {
-                CommandLineArguments args = mapper.reader().readValue(requestAsJson, CommandLineArguments.class);
+                CommandLineArguments args = mapper.readValue(req.getInputStream(), CommandLineArguments.class);
                 path = Paths.get(args.getInputFile());
                 keyPath = args.getKeyFile();
             }
-            catch(RuntimeException e) {
+            catch(IOException | RuntimeException e) {
                 errorMap.put("error","invalid json arguments");
                 res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 res.getOutputStream().print(mapper.writeValueAsString(errorMap));
@@ -105,10 +135,10 @@ public class SignerServlet extends HttpServlet {
         }
 
         if (keyPath != null) {
-            if (ServerConfigHolder.getInstance().getKeystores().containsKey(keyPath)) {
+            if (ServerConfigHolder.getInstance().getSessions().containsKey(keyPath)) {
                 //key matches
             }
-            else if (ServerConfigHolder.getInstance().getKeystores().containsKey("_")) {
+            else if (ServerConfigHolder.getInstance().getSessions().containsKey("_")) {
                 keyPath = "_";
             }
             else {
@@ -128,8 +158,8 @@ public class SignerServlet extends HttpServlet {
 
         //key needs to be loaded OR not given
         if (keyPath == null) {
-            keyPath = ServerConfigHolder.getInstance().getKeystores().keySet().stream().findFirst().get();
-        } else if (!ServerConfigHolder.getInstance().getKeystores().containsKey(keyPath)) {
+            keyPath = ServerConfigHolder.getInstance().getSessions().keySet().stream().findFirst().get();
+        } else if (!ServerConfigHolder.getInstance().getSessions().containsKey(keyPath)) {
             errorMap.put("error","keyfile not loaded on server startup");
             res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             res.getOutputStream().print(mapper.writeValueAsString(errorMap));
@@ -137,11 +167,465 @@ public class SignerServlet extends HttpServlet {
         }
 
         //sign pdf
-        Signer s = new Signer();
+        sign(req, res, path, keyPath);
+    }
+
+    /**
+     * Sign the request body (application/pdf or application/octet-stream) and stream the signed document back.
+     * The key is selected by the "key" query parameter or the Host header, signature parameters are taken
+     * from query parameters and headers (see {@link RequestParameters}).
+     */
+    private void signUpload(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        Map<String, String> errorMap = new HashMap<>();
+        Upload upload = upload(req, res);
+        if (upload == null) {
+            return;
+        }
+        SigningSession session = upload.getSession();
+        String keyName = resolveKey(req);
+        if (!admit(res)) {
+            return;
+        }
+
+        //read the body before a signing slot is taken, slow uploads do not block signatures
+        DocumentSpool spool;
+        try {
+            spool = DocumentSpool.spool(req.getInputStream(), uploadMemoryThreshold(session),
+                    Configuration.getInstance().getProperties().getLong("upload_max_size", 0),
+                    session.getTempDirectory() != null ? session.getTempDirectory() : Paths.get(System.getProperty("java.io.tmpdir")));
+        } catch (DocumentSpool.DocumentTooLargeException e) {
+            errorMap.put("error", e.getMessage());
+            res.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+            return;
+        }
+        String filename = req.getParameter("filename") != null ? Paths.get(req.getParameter("filename")).getFileName().toString() : "signed.pdf";
+
+        submit(req, res, "upload of " + spool.getSize() + " bytes", () -> {
+            DSSDocument signedDocument = session.sign(spool.getDocument(), upload.getParams());
+            try {
+                res.setStatus(HttpServletResponse.SC_OK);
+                res.setContentType("application/pdf");
+                res.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+                if (spool.getFile() != null) {
+                    SignedOutputWriter.write(spool.getFile(), signedDocument, res.getOutputStream());
+                } else {
+                    signedDocument.writeTo(res.getOutputStream());
+                }
+                res.getOutputStream().flush();
+            } finally {
+                session.release(signedDocument);
+            }
+            log.debug("signed upload of " + spool.getSize() + " bytes with " + keyName);
+        }, spool);
+    }
+
+    /**
+     * Sign all parts of a multipart/mixed request, see {@link MultipartBatchHandler}
+     */
+    private void signBatch(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        String boundary = MultipartReader.boundary(req.getContentType());
+        if (boundary == null) {
+            Map<String, String> errorMap = new HashMap<>();
+            errorMap.put("error", "multipart boundary missing");
+            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+            return;
+        }
+        Upload upload = upload(req, res);
+        if (upload == null || !admit(res)) {
+            return;
+        }
+        try {
+            new MultipartBatchHandler(upload.getSession(), upload.getParams(), ServerConfigHolder.getInstance().getExecutor())
+                    .handle(req, res, boundary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The session and document parameters for the key and signature parameters of an upload or batch request,
+     * or null if an error was sent
+     */
+    private Upload upload(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        Map<String, String> errorMap = new HashMap<>();
+        String keyName = resolveKey(req);
+        if (keyName == null) {
+            errorMap.put("error", "no key loaded for host");
+            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+            return null;
+        }
+        try {
+            Map<String, String> overrides = RequestParameters.fromRequest(req);
+            SigningSession session = SessionCache.getInstance().getSession(keyName, overrides);
+            return new Upload(session, RequestParameters.apply(session.getParams(), RequestParameters.perDocument(overrides)));
+        } catch (IllegalArgumentException e) {
+            errorMap.put("error", e.getMessage());
+            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+            return null;
+        }
+    }
+
+    static Map<String, Object> coalescingSnapshot() {
+        return FLIGHTS.snapshot();
+    }
+
+    private static String resolveKey(HttpServletRequest req) {
+        return resolveKey(req.getParameter("key") != null ? req.getParameter("key") : req.getHeader("Host"));
+    }
+
+    private static long uploadMemoryThreshold(SigningSession session) {
+        if (session.getParams().getMemoryLimit() != null) {
+            return session.getParams().getMemoryLimit() * 1024L * 1024L;
+        }
+        return Configuration.getInstance().getProperties().getLong("upload_memory_threshold", 8 * 1024 * 1024);
+    }
+
+    /**
+     * The loaded key for the given host or key name, the default key "_", or null
+     */
+    private static String resolveKey(String name) {
+        Map<String, SigningSession> sessions = ServerConfigHolder.getInstance().getSessions();
+        if (name != null && sessions.containsKey(name)) {
+            return name;
+        }
+        if (sessions.containsKey("_")) {
+            return "_";
+        }
+        //single key, e.g. loaded from the command line
+        return sessions.size() == 1 ? sessions.keySet().iterator().next() : null;
+    }
+
+    private void sign(HttpServletRequest req, HttpServletResponse res, Path path, String keyName) throws IOException {
+        submit(req, res, path.toString(), () -> signNow(res, path, keyName), null);
+    }
+
+    private void submit(HttpServletRequest req, HttpServletResponse res, String description, SigningJob job, Closeable resource) throws IOException {
+        submit(req, res, description, job, resource, null);
+    }
+
+    /**
+     * Hand the signature to the bounded signing executor and release the request thread.
+     * If the queue is full, the request is answered with 429, if it waited too long in the queue with 503;
+     * the rejection is also passed to the listener, if any. The resource, if any, is closed when the request is done.
+     */
+    private void submit(HttpServletRequest req, HttpServletResponse res, String description, SigningJob job, Closeable resource,
+                        RejectionListener rejectionListener) throws IOException {
+        SigningExecutor executor = ServerConfigHolder.getInstance().getExecutor();
+        if (executor == null) {
+            try {
+                job.run();
+            } finally {
+                closeQuietly(resource);
+            }
+            return;
+        }
+
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        long queued = System.currentTimeMillis();
+        long queueTimeout = ServerConfigHolder.getInstance().getQueueTimeoutMillis();
+        boolean accepted = executor.submit(() -> {
+            try {
+                if (queueTimeout > 0 && System.currentTimeMillis() - queued > queueTimeout) {
+                    reject(res, new RejectedException(HttpServletResponse.SC_SERVICE_UNAVAILABLE, executor.getRetryAfterSeconds()),
+                            rejectionListener);
+                    log.debug("request for " + description + " timed out in queue");
+                    return;
+                }
+                job.run();
+            } catch (Exception e) {
+                log.error("could not sign " + description, e);
+                if (!res.isCommitted()) {
+                    res.reset();
+                    res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            } finally {
+                closeQuietly(resource);
+                async.complete();
+            }
+        });
+        if (!accepted) {
+            try {
+                reject(res, new RejectedException(429, executor.getRetryAfterSeconds()), rejectionListener);
+                log.debug("signing queue full, rejected request for " + description);
+            } finally {
+                closeQuietly(resource);
+                async.complete();
+            }
+        }
+    }
+
+    /**
+     * Reject the request with 429 if the signing queue is full, before its body is read into memory or a file
+     * @return false if the request was rejected
+     */
+    private boolean admit(HttpServletResponse res) throws IOException {
+        SigningExecutor executor = ServerConfigHolder.getInstance().getExecutor();
+        if (executor == null || executor.admit()) {
+            return true;
+        }
+        reject(res, 429, executor.getRetryAfterSeconds());
+        log.debug("signing queue full, rejected upload before reading it");
+        return false;
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                log.warn("could not release " + resource + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void signNow(HttpServletResponse res, Path path, String keyName) throws IOException {
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setHeader("Content-Disposition", "attachment; filename=\"" + path.getFileName().toString() + "\"");
+        ServerConfigHolder.getInstance().getSessions().get(keyName).sign(path, null, res.getOutputStream());
+        log.debug("signed " + path + " with " + keyName);
+        res.getOutputStream().flush();
+    }
+
+    /**
+     * Sign the file once for all concurrent requests of the same document: the first request signs it on the
+     * signing executor, requests arriving meanwhile wait (without a thread) and are sent the same signed document.
+     */
+    private void signCoalesced(HttpServletRequest req, HttpServletResponse res, Path path, String keyName, String signKey) throws IOException {
+        SingleFlight<String, SharedOutput>.Call call = FLIGHTS.join(signKey);
+        if (call.isLeader()) {
+            //if the job is rejected or times out in the queue, the waiting requests are rejected the same way
+            submit(req, res, path.toString(), () -> {
+                SharedOutput output;
+                try {
+                    output = signShared(path, keyName, signKey);
+                } catch (IOException | RuntimeException e) {
+                    call.fail(e);
+                    throw e;
+                }
+                call.complete(output);
+                send(res, path, output);
+            }, call, call::fail);
+            return;
+        }
+
+        log.debug("waiting for signature of " + path + " in progress");
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        //the response is written on a container thread, not on the thread that completed the signature
+        call.getResult().whenComplete((output, failure) -> async.start(() -> {
+            Throwable error = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            try {
+                if (error instanceof RejectedException) {
+                    reject(res, ((RejectedException) error).getStatus(), ((RejectedException) error).getRetryAfterSeconds());
+                } else if (error != null) {
+                    Map<String, String> errorMap = new HashMap<>();
+                    errorMap.put("error", "could not sign document");
+                    res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+                } else {
+                    send(res, path, output);
+                }
+            } catch (IOException e) {
+                log.debug("could not send signed " + path + ": " + e.getMessage());
+            } finally {
+                call.close();
+                async.complete();
+            }
+        }));
+    }
+
+    /**
+     * Sign the file into a file which can be sent to many requests: the {@link SignedOutputCache} entry if enabled,
+     * a temporary file otherwise. With {@link AccelRedirect}, the file is published for nginx instead.
+     */
+    private static SharedOutput signShared(Path path, String keyName, String signKey) throws IOException {
+        SigningSession session = ServerConfigHolder.getInstance().getSessions().get(keyName);
+        try (SignedOutputWriter.Original original = SignedOutputWriter.pin(path)) {
+            return signShared(session, original, keyName, signKey);
+        }
+    }
+
+    private static SharedOutput signShared(SigningSession session, SignedOutputWriter.Original original, String keyName, String signKey) throws IOException {
+        Path path = original.getPath();
+        DSSDocument signedDocument = session.sign(new FileDocument(path.toFile()));
+        try {
+            log.debug("signed " + path + " with " + keyName);
+            SignedOutputCache cache = SignedOutputCache.getInstance();
+            AccelRedirect accel = AccelRedirect.getInstance();
+            if (cache.isEnabled()) {
+                cache.put(signKey, original, signedDocument);
+                if (accel.isEnabled()) {
+                    Path published = accel.newFile();
+                    if (cache.link(signKey, published)) {
+                        return new SharedOutput(null, null, accel.publish(published));
+                    }
+                } else {
+                    //stays readable if evicted meanwhile
+                    FileChannel cached = cache.open(signKey);
+                    if (cached != null) {
+                        return new SharedOutput(cached, null, null);
+                    }
+                }
+            }
+            if (accel.isEnabled()) {
+                Path published = accel.newFile();
+                try {
+                    SignedOutputWriter.write(original, signedDocument, published);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(published);
+                    throw e;
+                }
+                return new SharedOutput(null, null, accel.publish(published));
+            }
+            Path temporary = Files.createTempFile(session.getTempDirectory() != null ? session.getTempDirectory() :
+                    Paths.get(System.getProperty("java.io.tmpdir")), "open-pdf-sign-", ".pdf");
+            try {
+                SignedOutputWriter.write(original, signedDocument, temporary);
+                return new SharedOutput(FileChannel.open(temporary, StandardOpenOption.READ), temporary, null);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+        } finally {
+            session.release(signedDocument);
+        }
+    }
+
+    private boolean serveCached(HttpServletResponse res, Path path, String cacheKey) throws IOException {
+        try (FileChannel cached = SignedOutputCache.getInstance().open(cacheKey)) {
+            if (cached == null) {
+                return false;
+            }
+            serve(res, path, cached);
+            return true;
+        }
+    }
+
+    /**
+     * Link the cached signed document into the {@link AccelRedirect} directory and let nginx send it
+     */
+    private static boolean redirectCached(HttpServletResponse res, Path path, String cacheKey) throws IOException {
+        AccelRedirect accel = AccelRedirect.getInstance();
+        Path published = accel.newFile();
+        if (!SignedOutputCache.getInstance().link(cacheKey, published)) {
+            return false;
+        }
+        redirect(res, path, accel.publish(published));
+        return true;
+    }
+
+    private static void send(HttpServletResponse res, Path path, SharedOutput output) throws IOException {
+        if (output.getRedirect() != null) {
+            redirect(res, path, output.getRedirect());
+        } else {
+            serve(res, path, output.getChannel());
+        }
+    }
+
+    /**
+     * Answer with an X-Accel-Redirect to the published file, which nginx sends (with its length) instead of the body
+     */
+    private static void redirect(HttpServletResponse res, Path path, String location) {
         res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("application/pdf");
         res.setHeader("Content-Disposition", "attachment; filename=\"" + path.getFileName().toString() + "\"");
-        s.signPdf(path, null, ServerConfigHolder.getInstance().getKeystores().get(keyPath), ServerConfigHolder.getInstance().getKeystorePassphrase(), res.getOutputStream(), ServerConfigHolder.getInstance().getParams());
-        log.debug("signed " + path + " with " + keyPath);
+        res.setHeader(AccelRedirect.HEADER, location);
+        res.setContentLength(0);
+    }
+
+    /**
+     * Send a signed document from a file; reads are positional, so one channel may be sent to many requests at once
+     */
+    private static void serve(HttpServletResponse res, Path path, FileChannel signed) throws IOException {
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setHeader("Content-Disposition", "attachment; filename=\"" + path.getFileName().toString() + "\"");
+        res.setContentLengthLong(signed.size());
+        SignedOutputWriter.write(signed, res.getOutputStream());
         res.getOutputStream().flush();
     }
+
+    private void reject(HttpServletResponse res, int status, long retryAfterSeconds) throws IOException {
+        Map<String, String> errorMap = new HashMap<>();
+        errorMap.put("error", status == 429 ? "too many requests" : "server overloaded");
+        res.setStatus(status);
+        res.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        res.getOutputStream().print(mapper.writeValueAsString(errorMap));
+    }
+
+    private void reject(HttpServletResponse res, RejectedException rejection, RejectionListener rejectionListener) throws IOException {
+        if (rejectionListener != null) {
+            rejectionListener.rejected(rejection);
+        }
+        reject(res, rejection.getStatus(), rejection.getRetryAfterSeconds());
+    }
+
+    private interface SigningJob {
+        void run() throws IOException;
+    }
+
+    private interface RejectionListener {
+        void rejected(RejectedException rejection);
+    }
+
+    /**
+     * A signature rejected by the signing executor, with the status and Retry-After of the response
+     */
+    @Getter
+    private static class RejectedException extends IOException {
+        private final int status;
+        private final long retryAfterSeconds;
+
+        RejectedException(int status, long retryAfterSeconds) {
+            super("rejected by the signing queue with " + status);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * The session of an upload and the parameters of its document
+     */
+    @Getter
+    private static class Upload {
+        private final SigningSession session;
+        private final SignatureParameters params;
+
+        Upload(SigningSession session, SignatureParameters params) {
+            this.session = session;
+            this.params = params;
+        }
+    }
+
+    /**
+     * A signed document shared by coalesced requests, either a file sent by the server (removed, if temporary,
+     * when the last one is sent) or a file published for nginx
+     */
+    @Getter
+    private static class SharedOutput implements Closeable {
+        private final FileChannel channel;
+        private final Path temporary;
+        private final String redirect;
+
+        SharedOutput(FileChannel channel, Path temporary, String redirect) {
+            this.channel = channel;
+            this.temporary = temporary;
+            this.redirect = redirect;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
 }
@@ -0,0 +1,137 @@
+package org.openpdfsign;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs signing jobs of the server on a bounded number of threads, with a bounded queue in front.
+ * Jobs which find the queue full are rejected, so a burst of requests cannot exhaust heap and CPU.
+ * Optionally, the number of concurrent jobs adapts to the observed latency (additive increase, multiplicative decrease):
+ * above the latency target the limit shrinks, below it grows back up to the maximum.
+ */
+@Slf4j
+public class SigningExecutor {
+    private static final double DECREASE_FACTOR = 0.9;
+
+    @Getter
+    private final int maxConcurrency;
+    @Getter
+    private final int queueCapacity;
+    private final long latencyTargetMillis;
+    private final ExecutorService workers;
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+
+    private int running;
+    private double limit;
+    private double averageLatencyMillis;
+    private long completed;
+    private long rejected;
+
+    /**
+     * @param latencyTargetMillis adapt the concurrency to this latency, or 0 for a fixed concurrency of maxConcurrency
+     */
+    public SigningExecutor(int maxConcurrency, int queueCapacity, long latencyTargetMillis) {
+        this(maxConcurrency, queueCapacity, latencyTargetMillis, Threads.newWorkerExecutor("signer", maxConcurrency));
+    }
+
+    /**
+     * @param workers runs the jobs, needs to run at least maxConcurrency jobs at a time
+     */
+    public SigningExecutor(int maxConcurrency, int queueCapacity, long latencyTargetMillis, ExecutorService workers) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.limit = maxConcurrency;
+        this.workers = workers;
+    }
+
+    /**
+     * Run the job now, or queue it if all slots are taken
+     * @return false if the queue is full and the job was rejected
+     */
+    public synchronized boolean submit(Runnable job) {
+        if (running < currentLimit()) {
+            start(job);
+            return true;
+        }
+        if (queue.size() < queueCapacity) {
+            queue.add(job);
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Whether a job submitted now would be accepted; if not, the rejection is counted. Used to turn away a request
+     * before its body is read.
+     */
+    public synchronized boolean admit() {
+        if (running < currentLimit() || queue.size() < queueCapacity) {
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Seconds until a rejected client should retry: the time to work off the current queue, at least one second
+     */
+    public synchronized long getRetryAfterSeconds() {
+        double drainMillis = (queue.size() + 1) * Math.max(averageLatencyMillis, 1) / currentLimit();
+        return Math.max(1, (long) Math.ceil(drainMillis / 1000));
+    }
+
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("running", running);
+        snapshot.put("queued", queue.size());
+        snapshot.put("limit", currentLimit());
+        snapshot.put("maxConcurrency", maxConcurrency);
+        snapshot.put("queueCapacity", queueCapacity);
+        snapshot.put("averageLatencyMillis", (long) averageLatencyMillis);
+        snapshot.put("completed", completed);
+        snapshot.put("rejected", rejected);
+        return snapshot;
+    }
+
+    private void start(Runnable job) {
+        running++;
+        workers.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                job.run();
+            } catch (RuntimeException e) {
+                log.error("signing job failed", e);
+            } finally {
+                finished((System.nanoTime() - start) / 1_000_000);
+            }
+        });
+    }
+
+    private synchronized void finished(long latencyMillis) {
+        running--;
+        completed++;
+        averageLatencyMillis = averageLatencyMillis == 0 ? latencyMillis : 0.9 * averageLatencyMillis + 0.1 * latencyMillis;
+        if (latencyTargetMillis > 0) {
+            if (latencyMillis > latencyTargetMillis) {
+                limit = Math.max(1, limit * DECREASE_FACTOR);
+            } else {
+                limit = Math.min(maxConcurrency, limit + 1 / limit);
+            }
+        }
+        while (running < currentLimit() && !queue.isEmpty()) {
+            start(queue.poll());
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.openpdfsign;
+
+import com.beust.jcommander.Strings;
+import eu.europa.esig.dss.enumerations.CertificationPermission;
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.model.*;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.pades.PAdESSignatureParameters;
+import eu.europa.esig.dss.pades.SignatureImageParameters;
+import eu.europa.esig.dss.pades.signature.PAdESService;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.SignatureTokenConnection;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * A prepared signing setup for one key and one set of signature parameters, as built by
+ * {@link Signer#newSession(byte[], char[], SignatureParameters)}.
+ * All members are read-only after construction, so one session may be shared by concurrent requests.
+ * Per signature, only the document is parsed, digested, signed and written.
+ */
+@Slf4j
+@Getter
+public class SigningSession {
+
+    //see PDRectangle
+    private static final float POINTS_PER_INCH = 72;
+    private static final float POINTS_PER_MM = 1 / (10 * 2.54f) * POINTS_PER_INCH;
+
+    private final SignatureParameters params;
+    private final SignatureTokenConnection signingToken;
+    private final DSSPrivateKeyEntry privateKey;
+    private final List<CertificateToken> certificateChain;
+    private final PAdESService service;
+    private final SignatureLevel signatureLevel;
+    private final Integer contentSize;
+    private final DSSDocument image;
+    private final PAdESService largeDocumentService;
+    private final Path tempDirectory;
+
+    private final String signerName;
+    private final String labelHint;
+    private final String labelSignee;
+    private final String labelTimestamp;
+    private final String hint;
+    private final DateTimeFormatter dateFormatter;
+
+    SigningSession(SignatureParameters params, SignatureTokenConnection signingToken, DSSPrivateKeyEntry privateKey,
+                   List<CertificateToken> certificateChain, PAdESService service, SignatureLevel signatureLevel, Integer contentSize, DSSDocument image,
+                   PAdESService largeDocumentService, Path tempDirectory) {
+        this.params = params;
+        this.signingToken = signingToken;
+        this.privateKey = privateKey;
+        this.certificateChain = certificateChain;
+        this.service = service;
+        this.signatureLevel = signatureLevel;
+        this.contentSize = contentSize;
+        this.image = image;
+        this.largeDocumentService = largeDocumentService;
+        this.tempDirectory = tempDirectory;
+
+        //texts of the visible signature do not change between documents
+        this.signerName = privateKey.getCertificate().getSubject().getPrettyPrintRFC2253();
+        this.labelHint = ObjectUtils.firstNonNull(params.getLabelHint(), Configuration.getInstance().getResourceBundle().getString("hint"));
+        this.labelSignee = ObjectUtils.firstNonNull(params.getLabelSignee(), Configuration.getInstance().getResourceBundle().getString("signee"));
+        this.labelTimestamp = ObjectUtils.firstNonNull(params.getLabelTimestamp(), Configuration.getInstance().getResourceBundle().getString("timestamp"));
+        if (!Strings.isStringEmpty(params.getHint())) {
+            this.hint = params.getHint();
+        } else if (params.getNoHint()) {
+            this.hint = null;
+        } else {
+            this.hint = Configuration.getInstance().getResourceBundle().getString("hint_text");
+        }
+
+        // respect local timezone
+        DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneId.systemDefault());
+        // user-provided timezone, if any
+        if (params.getTimezone() != null) {
+            formatter = formatter.withZone(ZoneId.of(params.getTimezone()));
+        }
+        this.dateFormatter = formatter;
+    }
+
+    /**
+     * Sign the given file, writing the result either to binaryOutput (if given) or to outputFile
+     */
+    public void sign(Path pdfFile, Path outputFile, OutputStream binaryOutput) throws IOException {
+        try (SignedOutputWriter.Original original = SignedOutputWriter.pin(pdfFile)) {
+            DSSDocument signedDocument = sign(new FileDocument(pdfFile.toFile()));
+            try {
+                //the original file is a prefix of the signed document, only the appended revision is copied
+                if (binaryOutput != null) {
+                    SignedOutputWriter.write(original, signedDocument, binaryOutput);
+                } else {
+                    SignedOutputWriter.write(original, signedDocument, outputFile);
+                }
+            } finally {
+                release(signedDocument);
+            }
+        }
+    }
+
+    /**
+     * Sign the given document. For documents above the memory limit, the result may be backed by a
+     * temporary file, which is removed by {@link #release(DSSDocument)}.
+     */
+    public DSSDocument sign(DSSDocument toSignDocument) throws IOException {
+        return sign(toSignDocument, params);
+    }
+
+    /**
+     * Sign the given document with parameters of this document: page, position, reason, location, contact
+     * and passphrase are taken from documentParams, everything else is as prepared for the session
+     */
+    public DSSDocument sign(DSSDocument toSignDocument, SignatureParameters documentParams) throws IOException {
+        boolean largeDocument = isLargeDocument(toSignDocument);
+        PAdESService service = largeDocument ? largeDocumentService : this.service;
+        if (largeDocument) {
+            log.debug("Signing in bounded-memory mode");
+        }
+
+        PAdESSignatureParameters signatureParameters = buildSignatureParameters(documentParams);
+        PreparedDocument preparedDocument = null;
+        try {
+            // Initialize visual signature and configure
+            if (image != null) {
+                preparedDocument = prepareVisibleSignature(toSignDocument, signatureParameters, documentParams, largeDocument);
+                toSignDocument = preparedDocument.getDocument();
+            }
+
+            ToBeSigned dataToSign = service.getDataToSign(toSignDocument, signatureParameters);
+
+            // This function obtains the signature value for signed information using the
+            // private key and specified algorithm
+            DigestAlgorithm digestAlgorithm = signatureParameters.getDigestAlgorithm();
+            log.debug("Data to be signed loaded");
+            SignatureValue signatureValue = signingToken.sign(dataToSign, digestAlgorithm, privateKey);
+            log.debug("Signature value calculated");
+
+            DSSDocument signedDocument = service.signDocument(toSignDocument, signatureParameters, signatureValue);
+            log.debug("Document signing complete");
+            return signedDocument;
+        } finally {
+            if (preparedDocument != null) {
+                preparedDocument.close();
+            }
+        }
+    }
+
+    /**
+     * Remove the temporary file behind a signed document, if any
+     */
+    public void release(DSSDocument signedDocument) throws IOException {
+        if (tempDirectory != null && signedDocument instanceof FileDocument) {
+            Path file = ((FileDocument) signedDocument).getFile().toPath();
+            if (tempDirectory.equals(file.getParent())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private boolean isLargeDocument(DSSDocument document) {
+        if (largeDocumentService == null) {
+            return false;
+        }
+        long memoryLimit = params.getMemoryLimit() * 1024L * 1024L;
+        if (document instanceof FileDocument) {
+            return ((FileDocument) document).getFile().length() > memoryLimit;
+        }
+        if (document instanceof InMemoryDocument) {
+            return ((InMemoryDocument) document).getBytes().length > memoryLimit;
+        }
+        //size unknown, stay on the safe side
+        return true;
+    }
+
+    /**
+     * PAdES parameters are mutable (signing date, image parameters), so they are built for every signature
+     */
+    private PAdESSignatureParameters buildSignatureParameters(SignatureParameters documentParams) {
+        PAdESSignatureParameters signatureParameters = new PAdESSignatureParameters();
+        signatureParameters.setSigningCertificate(privateKey.getCertificate());
+        signatureParameters.setCertificateChain(certificateChain);
+        signatureParameters.setSignatureLevel(signatureLevel);
+        if (contentSize != null) {
+            signatureParameters.setContentSize(contentSize);
+        }
+
+        //set certification level
+        switch (params.getCertification()) {
+            case NOT_CERTIFIED:
+                //don't set anything
+                break;
+            case CERTIFIED_NO_CHANGE_PERMITTED:
+                signatureParameters.setPermission(CertificationPermission.NO_CHANGE_PERMITTED);
+                break;
+            case CERTIFIED_CHANGES_PERMITTED:
+                signatureParameters.setPermission(CertificationPermission.CHANGES_PERMITTED);
+                break;
+            case CERTIFIED_MINIMAL_CHANGES_PERMITTED:
+            default:
+                signatureParameters.setPermission(CertificationPermission.MINIMAL_CHANGES_PERMITTED);
+                break;
+        }
+
+        if(!Strings.isStringEmpty(documentParams.getLocation()))
+        {
+            signatureParameters.setLocation(documentParams.getLocation());
+        }
+
+        if(!Strings.isStringEmpty(documentParams.getReason()))
+        {
+            signatureParameters.setReason(documentParams.getReason());
+        }
+
+        if(!Strings.isStringEmpty(documentParams.getContact()))
+        {
+            signatureParameters.setContactInfo(documentParams.getContact());
+        }
+        signatureParameters.setAppName("open-pdf-sign");
+
+        //for encrypted PDF files, the passphrase is needed
+        if(!StringUtils.isEmpty(documentParams.getPdfPassphrase())) {
+            signatureParameters.setPasswordProtection(documentParams.getPdfPassphrase().toCharArray());
+        }
+        return signatureParameters;
+    }
+
+    private PreparedDocument prepareVisibleSignature(DSSDocument toSignDocument, PAdESSignatureParameters signatureParameters,
+                                                     SignatureParameters documentParams, boolean largeDocument) throws IOException {
+        SignatureImageParameters imageParameters = new SignatureImageParameters();
+        TableSignatureFieldParameters fieldParameters = new TableSignatureFieldParameters();
+        imageParameters.setFieldParameters(fieldParameters);
+        imageParameters.setImage(image);
+
+        //add new page and resolve negative page numbers, parsing the document only once
+        PreparedDocument preparedDocument = largeDocument ?
+                PreparedDocument.prepare(toSignDocument, documentParams, params.getMemoryLimit() * 1024L * 1024L, tempDirectory) :
+                PreparedDocument.prepare(toSignDocument, documentParams);
+        fieldParameters.setPage(preparedDocument.getSignaturePage());
+        fieldParameters.setOriginX(documentParams.getLeft() * POINTS_PER_MM * 10f);
+        fieldParameters.setOriginY(documentParams.getTop() * POINTS_PER_MM * 10f);
+        fieldParameters.setWidth(params.getWidth() * POINTS_PER_MM * 10f);
+
+        fieldParameters.setSignatureDate(dateFormatter.format(signatureParameters.getSigningDate().toInstant()));
+        fieldParameters.setSignaturString(signerName);
+        fieldParameters.setLabelHint(labelHint);
+        fieldParameters.setLabelSignee(labelSignee);
+        fieldParameters.setLabelTimestamp(labelTimestamp);
+        fieldParameters.setHint(hint);
+        fieldParameters.setImageOnly(params.getImageOnly());
+
+        signatureParameters.setImageParameters(imageParameters);
+        log.debug("Visible signature parameters set");
+        return preparedDocument;
+    }
+}
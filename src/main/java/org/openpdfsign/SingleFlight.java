@@ -0,0 +1,120 @@
+package org.openpdfsign;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Coalesces concurrent work for the same key: the first caller (the leader) does the work, callers arriving
+ * while it is in flight wait for and share its result. The result is closed once every caller is done with it.
+ */
+@Slf4j
+public class SingleFlight<K, V extends Closeable> {
+    private final Map<K, Flight> flights = new HashMap<>();
+    private long started;
+    private long coalesced;
+
+    /**
+     * Join the flight for the key, or start one. The leader has to {@link Call#complete(Closeable)} or
+     * {@link Call#fail(Throwable)} it; every caller has to close its call.
+     */
+    public synchronized Call join(K key) {
+        Flight flight = flights.get(key);
+        boolean leader = flight == null;
+        if (leader) {
+            flight = new Flight(key);
+            flights.put(key, flight);
+            started++;
+        } else {
+            coalesced++;
+        }
+        flight.participants++;
+        return new Call(flight, leader);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("inFlight", flights.size());
+        snapshot.put("started", started);
+        snapshot.put("coalesced", coalesced);
+        return snapshot;
+    }
+
+    private class Flight {
+        private final K key;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private int participants;
+
+        Flight(K key) {
+            this.key = key;
+        }
+    }
+
+    public class Call implements Closeable {
+        private final Flight flight;
+        private final boolean leader;
+        private boolean closed;
+
+        private Call(Flight flight, boolean leader) {
+            this.flight = flight;
+            this.leader = leader;
+        }
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+        public CompletableFuture<V> getResult() {
+            return flight.result;
+        }
+
+        public void complete(V value) {
+            land();
+            flight.result.complete(value);
+        }
+
+        public void fail(Throwable error) {
+            land();
+            flight.result.completeExceptionally(error);
+        }
+
+        /**
+         * Done with the result. A leader closing before completing fails the flight for everyone.
+         */
+        @Override
+        public void close() {
+            if (leader && !flight.result.isDone()) {
+                fail(new IOException("signing was not started"));
+            }
+            boolean last;
+            synchronized (SingleFlight.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                last = --flight.participants == 0;
+            }
+            if (last && !flight.result.isCompletedExceptionally() && flight.result.join() != null) {
+                try {
+                    flight.result.join().close();
+                } catch (IOException e) {
+                    log.warn("could not release result of " + flight.key + ": " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Later callers start a new flight
+         */
+        private void land() {
+            synchronized (SingleFlight.this) {
+                flights.remove(flight.key, flight);
+            }
+        }
+    }
+}
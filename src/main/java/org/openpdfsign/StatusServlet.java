@@ -0,0 +1,38 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports the state of the shared network sources as JSON
+ */
+public class StatusServlet extends HttpServlet {
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (ServerConfigHolder.getInstance().getExecutor() != null) {
+            Map<String, Object> signing = new LinkedHashMap<>(ServerConfigHolder.getInstance().getExecutor().snapshot());
+            signing.put("virtualThreads", Threads.isVirtual());
+            status.put("signing", signing);
+        }
+        status.put("tsa", TsaRegistry.getInstance().snapshot());
+        status.put("http", PooledDataLoader.poolStats());
+        status.put("crl", CrlStore.getInstance().snapshot());
+        status.put("revocation", RevocationPrefetcher.getInstance().snapshot());
+        status.put("trust", TrustedCertificatesLoader.snapshotInfo());
+        status.put("signedCache", SignedOutputCache.getInstance().snapshot());
+        status.put("coalescing", SignerServlet.coalescingSnapshot());
+
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("application/json");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(res.getOutputStream(), status);
+    }
+}
@@ -0,0 +1,57 @@
+package org.openpdfsign;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for the server and for network-bound work, on platform threads.
+ * On Java 21 and later, the version in src/main/java21 (packaged as multi-release class) uses virtual threads instead.
+ */
+public class Threads {
+
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Default number of concurrent signing jobs of the server: one per CPU
+     */
+    public static int defaultConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Thread pool for Jetty's connectors and handlers
+     */
+    public static ThreadPool newServerThreadPool() {
+        return new QueuedThreadPool();
+    }
+
+    /**
+     * Executor for up to the given number of concurrent tasks, which are mostly blocked on network I/O
+     */
+    public static ExecutorService newWorkerExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, daemonFactory(name));
+    }
+
+    /**
+     * Executor for an unbounded number of short, network-bound tasks
+     */
+    public static ExecutorService newBlockingExecutor(String name) {
+        return Executors.newCachedThreadPool(daemonFactory(name));
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
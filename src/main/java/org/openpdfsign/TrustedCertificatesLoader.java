@@ -1,43 +1,376 @@
 package org.openpdfsign;
 
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
 import eu.europa.esig.dss.model.x509.CertificateToken;
-import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
 import eu.europa.esig.dss.service.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.spi.DSSUtils;
 import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
 import eu.europa.esig.dss.spi.x509.CommonCertificateSource;
+import eu.europa.esig.dss.spi.x509.CommonTrustedCertificateSource;
 import eu.europa.esig.dss.tsl.job.TLValidationJob;
 import eu.europa.esig.dss.tsl.source.LOTLSource;
 import eu.europa.esig.dss.tsl.source.TLSource;
 import eu.europa.esig.dss.tsl.sync.AcceptAllStrategy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.openssl.PEMParser;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Loads the trust anchors of the configured {@code trusted_certificates} sources.
+ * The anchors are kept as one process-wide snapshot, which is replaced atomically when a background refresh
+ * completes. Each snapshot is persisted as a list of DER certificates, so a restart does not need to parse
+ * the trusted lists again.
+ */
+@Slf4j
 public class TrustedCertificatesLoader {
+    private static final int SNAPSHOT_MAGIC = 0x54525354;
+    private static final int INDEX_MAGIC = 0x54524958;
+    private static final long DEFAULT_REFRESH_INTERVAL = 24 * 3600;
+    private static final AtomicReference<TrustAnchors> SNAPSHOT = new AtomicReference<>();
+    private static ScheduledExecutorService refresher;
+
+    /**
+     * The trust anchors of the current snapshot. Do not modify, the source is shared.
+     */
     public static CommonCertificateSource getDefaults() {
-        //@TODO: load from file system, if possible
-        CommonCertificateSource commonCertificateSource = new CommonCertificateSource();
+        return getSnapshot().getCertificateSource();
+    }
+
+    /**
+     * The trust anchors of the current snapshot as trusted source. Do not modify, the source is shared.
+     */
+    public static CommonTrustedCertificateSource getTrustedSource() {
+        return getSnapshot().getTrustedSource();
+    }
+
+    static TrustAnchors getSnapshot() {
+        TrustAnchors snapshot = SNAPSHOT.get();
+        if (snapshot == null) {
+            synchronized (TrustedCertificatesLoader.class) {
+                snapshot = SNAPSHOT.get();
+                if (snapshot == null) {
+                    snapshot = loadInitialSnapshot();
+                    SNAPSHOT.set(snapshot);
+                    scheduleRefresh(snapshot);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Build a new snapshot from the configured sources and swap it in; verifications in progress keep the old one
+     */
+    public static TrustAnchors refresh() throws IOException {
+        String[] sources = getSources();
+        TrustAnchors snapshot = build(sources);
+        SNAPSHOT.set(snapshot);
+        write(getSnapshotFile(), String.join("\n", sources), snapshot);
+        log.debug("Trust anchor snapshot with " + snapshot.getCertificates().size() + " certificates built");
+        return snapshot;
+    }
+
+    /**
+     * Size and age of the current snapshot, e.g. for the status endpoint
+     */
+    public static Map<String, Object> snapshotInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        TrustAnchors snapshot = SNAPSHOT.get();
+        if (snapshot != null) {
+            info.put("certificates", snapshot.getCertificates().size());
+            info.put("created", new Date(snapshot.getCreated()));
+        }
+        return info;
+    }
+
+    private static TrustAnchors loadInitialSnapshot() {
+        String[] sources = getSources();
+        try {
+            TrustAnchors stored = read(getSnapshotFile(), String.join("\n", sources));
+            if (stored != null) {
+                log.debug("Trust anchor snapshot with " + stored.getCertificates().size() + " certificates loaded");
+                return stored;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("could not read trust anchor snapshot: " + e.getMessage());
+        }
+        try {
+            return refresh();
+        } catch (IOException e) {
+            //snapshot is built, but could not be persisted
+            log.warn("could not write trust anchor snapshot: " + e.getMessage());
+            return SNAPSHOT.get();
+        }
+    }
+
+    private static void scheduleRefresh(TrustAnchors snapshot) {
+        long interval = Configuration.getInstance().getProperties().getLong("trust_refresh_interval", DEFAULT_REFRESH_INTERVAL) * 1000;
+        if (interval <= 0) {
+            return;
+        }
+        //a snapshot loaded from disk may already be due
+        long delay = Math.max(0, snapshot.getCreated() + interval - System.currentTimeMillis());
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trust-anchor-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.warn("could not refresh trust anchors, keeping the current snapshot: " + e.getMessage());
+            }
+        }, delay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static String[] getSources() {
+        return Configuration.getInstance().getProperties().getStringArray("trusted_certificates");
+    }
+
+    private static Path getSnapshotFile() {
+        return Paths.get(Configuration.getInstance().getProperties().getString("trust_snapshot_file",
+                getDataDirectory() + File.separator + "trust-anchors.bin"));
+    }
+
+    private static Path getIndexDirectory() {
+        return Paths.get(Configuration.getInstance().getProperties().getString("trust_index_dir",
+                getDataDirectory() + File.separator + "trust-index"));
+    }
+
+    /**
+     * Default location of the stored trust anchors: private to the user, unlike the shared temporary directory
+     */
+    private static String getDataDirectory() {
+        return System.getProperty("user.home") + File.separator + ".open-pdf-sign";
+    }
+
+    /**
+     * Create the directory and its missing parents with access for the current user only, where supported
+     */
+    static void createPrivateDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
 
-        Arrays.stream(Configuration.getInstance().getProperties().getStringArray("trusted_certificates")).forEach(source -> {
+    /**
+     * Whether a stored snapshot or index can be trusted: owned by the current user and not writable by others.
+     * Anyone who could change it could add trust anchors.
+     */
+    static boolean isPrivate(Path file) {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return true;
+        }
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(file, PosixFileAttributes.class);
+            UserPrincipal user = file.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            Set<PosixFilePermission> permissions = attributes.permissions();
+            return attributes.owner().equals(user) && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                    && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        } catch (IOException e) {
+            log.debug("could not check the owner of " + file, e);
+            return false;
+        }
+    }
+
+    private static TrustAnchors build(String[] sources) {
+        //the same anchor is often contained in several sources, keep it once per fingerprint
+        Map<String, CertificateToken> certificates = new LinkedHashMap<>();
+        Arrays.stream(sources).forEach(source -> {
             try {
-                CommonCertificateSource certSource = loadFromSource(source);
-                certSource.getCertificates().stream().forEach(cert -> commonCertificateSource.addCertificate(cert));
+                loadFromSource(source).getCertificates().forEach(cert -> certificates.putIfAbsent(cert.getDSSIdAsString(), cert));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             } catch (CertificateException e) {
                 throw new RuntimeException(e);
             }
         });
+        return new TrustAnchors(System.currentTimeMillis(), new ArrayList<>(certificates.values()));
+    }
 
-        return commonCertificateSource;
+    /**
+     * Persist a snapshot: magic, the sources it was built from, creation time, count and the DER encoded certificates
+     */
+    static void write(Path file, String sourcesKey, TrustAnchors snapshot) throws IOException {
+        createPrivateDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeUTF(sourcesKey);
+            out.writeLong(snapshot.getCreated());
+            writeCertificates(out, snapshot.getCertificates());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the persisted snapshot, or null if there is none for the given sources or it is not private
+     */
+    static TrustAnchors read(Path file, String sourcesKey) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        if (!isPrivate(file)) {
+            log.warn("ignoring trust anchor snapshot " + file + ": not owned by this user or writable by others");
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || !sourcesKey.equals(in.readUTF())) {
+                return null;
+            }
+            long created = in.readLong();
+            return new TrustAnchors(created, readCertificates(in));
+        }
+    }
+
+    private static void writeCertificates(DataOutputStream out, List<CertificateToken> certificates) throws IOException {
+        out.writeInt(certificates.size());
+        for (CertificateToken certificate : certificates) {
+            byte[] encoded = certificate.getEncoded();
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    private static List<CertificateToken> readCertificates(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<CertificateToken> certificates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            certificates.add(DSSUtils.loadCertificate(encoded));
+        }
+        return certificates;
+    }
+
+    /**
+     * Load the certificates of a local trust store: a directory of PEM/DER files (e.g. /etc/ssl/certs) or a bundle file.
+     * Files are parsed in parallel; the result is indexed on disk and only parsed again when the directory
+     * modification time or any file (name, size, modification time) changed.
+     */
+    static List<CertificateToken> loadFromPath(Path path, Path indexDirectory) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> list = Files.list(path)) {
+                files = list.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        } else {
+            files = Collections.singletonList(path);
+        }
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        long stamp = 1;
+        for (Path file : files) {
+            stamp = 31 * stamp + file.getFileName().toString().hashCode();
+            stamp = 31 * stamp + Files.size(file);
+            stamp = 31 * stamp + Files.getLastModifiedTime(file).toMillis();
+        }
+
+        String location = path.toAbsolutePath().toString();
+        Path indexFile = indexDirectory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(DSSUtils.digest(DigestAlgorithm.SHA256, location.getBytes(StandardCharsets.UTF_8))) + ".idx");
+        if (Files.exists(indexFile) && isPrivate(indexFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                if (in.readInt() == INDEX_MAGIC && location.equals(in.readUTF()) && in.readLong() == modified && in.readLong() == stamp) {
+                    return readCertificates(in);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("could not read trust store index of " + location, e);
+            }
+        }
+
+        Map<String, CertificateToken> certificates = files.parallelStream()
+                .flatMap(file -> parseFile(file).stream())
+                .collect(Collectors.toMap(CertificateToken::getDSSIdAsString, cert -> cert, (a, b) -> a, LinkedHashMap::new));
+        List<CertificateToken> result = new ArrayList<>(certificates.values());
+        log.debug("Parsed " + result.size() + " certificates from " + files.size() + " files in " + location);
+
+        try {
+            createPrivateDirectories(indexDirectory);
+            Path temp = Files.createTempFile(indexDirectory, indexFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeUTF(location);
+                out.writeLong(modified);
+                out.writeLong(stamp);
+                writeCertificates(out, result);
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("could not write trust store index of " + location + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * All certificates of a PEM (one or more certificates) or DER file. Other content, e.g. CRLs or keys, is skipped.
+     */
+    private static List<CertificateToken> parseFile(Path file) {
+        try {
+            return parseCertificates(Files.readAllBytes(file));
+        } catch (IOException | RuntimeException e) {
+            log.debug("skipping " + file + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    static List<CertificateToken> parseCertificates(byte[] data) throws IOException {
+        List<CertificateToken> certificates = new ArrayList<>();
+        if (!new String(data, StandardCharsets.US_ASCII).contains("-----BEGIN")) {
+            certificates.add(DSSUtils.loadCertificate(data));
+            return certificates;
+        }
+        try (PEMParser pemParser = new PEMParser(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.US_ASCII))) {
+            Object object;
+            while ((object = pemParser.readObject()) != null) {
+                if (object instanceof X509CertificateHolder) {
+                    certificates.add(DSSUtils.loadCertificate(((X509CertificateHolder) object).getEncoded()));
+                }
+            }
+        }
+        return certificates;
     }
 
     public static CommonCertificateSource loadFromSource(String source) throws IOException, CertificateException {
@@ -45,7 +378,7 @@ public class TrustedCertificatesLoader {
 
         FileCacheDataLoader onlineFileLoader = new FileCacheDataLoader();
         onlineFileLoader.setCacheExpirationTime(7 * 24 * 60 * 60 * 1000);
-        onlineFileLoader.setDataLoader(new CommonsDataLoader()); // instance of DataLoader which can access to Internet (proxy,...)
+        onlineFileLoader.setDataLoader(PooledDataLoader.forDownloads()); // instance of DataLoader which can access to Internet (proxy,...)
         onlineFileLoader.setFileCacheDirectory(new File(System.getProperty("java.io.tmpdir") + File.separator + "open-pdf-sign"));
 
         //case: URI
@@ -92,20 +425,35 @@ public class TrustedCertificatesLoader {
             });
         }
         else if (source.startsWith("https://")) {
-            onlineFileLoader.get(source);
-
             byte[] result = onlineFileLoader.get(source);
-            PEMParser pemParser = new PEMParser(new InputStreamReader(new ByteArrayInputStream(result)));
-            while (true) {
-                X509CertificateHolder certHolder = (X509CertificateHolder) pemParser.readObject();
-                if (certHolder == null) {
-                    break;
-                }
-                X509Certificate cert = new JcaX509CertificateConverter().getCertificate(certHolder);
-                commonCertificateSource.addCertificate(new CertificateToken(cert));
-            }
+            parseCertificates(result).forEach(commonCertificateSource::addCertificate);
+        }
+        else if (Files.exists(Paths.get(source))) {
+            //local directory or bundle file
+            loadFromPath(Paths.get(source), getIndexDirectory()).forEach(commonCertificateSource::addCertificate);
+        }
+        else {
+            log.debug("trusted certificate source " + source + " not found, skipping");
         }
 
         return commonCertificateSource;
     }
+
+    /**
+     * An immutable set of trust anchors
+     */
+    @Getter
+    public static class TrustAnchors {
+        private final long created;
+        private final List<CertificateToken> certificates;
+        private final CommonCertificateSource certificateSource = new CommonCertificateSource();
+        private final CommonTrustedCertificateSource trustedSource = new CommonTrustedCertificateSource();
+
+        TrustAnchors(long created, List<CertificateToken> certificates) {
+            this.created = created;
+            this.certificates = certificates;
+            certificates.forEach(certificateSource::addCertificate);
+            trustedSource.importAsTrusted(certificateSource);
+        }
+    }
 }
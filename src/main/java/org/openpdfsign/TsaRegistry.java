@@ -0,0 +1,265 @@
+package org.openpdfsign;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide health and latency statistics of the TSA sources, shared by all signing sessions.
+ * Healthy sources are ordered by their recent median latency. Sources failing repeatedly are skipped (circuit open)
+ * until the open time has passed; then a single probe request decides whether they are used again.
+ */
+@Slf4j
+public class TsaRegistry {
+    private static final int DEFAULT_BREAKER_FAILURES = 5;
+    private static final long DEFAULT_BREAKER_OPEN_TIME = 30000;
+    private static final int MIN_SAMPLES = 20;
+    private static TsaRegistry INSTANCE;
+
+    private final Map<String, TsaStatus> sources = new ConcurrentHashMap<>();
+    private final int breakerFailures;
+    private final long breakerOpenMillis;
+
+    TsaRegistry(int breakerFailures, long breakerOpenMillis) {
+        this.breakerFailures = breakerFailures;
+        this.breakerOpenMillis = breakerOpenMillis;
+    }
+
+    public static synchronized TsaRegistry getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new TsaRegistry(
+                    Configuration.getInstance().getProperties().getInt("tsp_breaker_failures", DEFAULT_BREAKER_FAILURES),
+                    Configuration.getInstance().getProperties().getLong("tsp_breaker_open_time", DEFAULT_BREAKER_OPEN_TIME));
+        }
+        return INSTANCE;
+    }
+
+    public TsaStatus get(String source) {
+        return sources.computeIfAbsent(source, s -> new TsaStatus());
+    }
+
+    /**
+     * Order the given sources for a request: closed circuits by median latency (unmeasured first, in given order),
+     * then half-open candidates. Open circuits are left out, unless no other source is left.
+     */
+    public List<String> route(Collection<String> candidates) {
+        long now = System.currentTimeMillis();
+        List<String> closed = new ArrayList<>();
+        List<String> halfOpen = new ArrayList<>();
+        for (String source : candidates) {
+            switch (get(source).getState(now)) {
+                case CLOSED:
+                    closed.add(source);
+                    break;
+                case HALF_OPEN:
+                    halfOpen.add(source);
+                    break;
+                default:
+                    break;
+            }
+        }
+        closed.sort(Comparator.comparingLong(source -> get(source).medianLatency()));
+        List<String> route = new ArrayList<>(closed);
+        route.addAll(halfOpen);
+        if (route.isEmpty()) {
+            log.debug("All TSA circuits open, trying all sources");
+            route.addAll(candidates);
+        }
+        return route;
+    }
+
+    /**
+     * Whether all given sources have an open circuit, i.e. {@link #route(Collection)} falls back to all of them
+     */
+    public boolean allOpen(Collection<String> candidates) {
+        long now = System.currentTimeMillis();
+        return candidates.stream().allMatch(source -> get(source).getState(now) == State.OPEN);
+    }
+
+    /**
+     * Whether a request may be sent to the source now; for a half-open circuit, only one probe at a time is allowed
+     */
+    public boolean tryAcquire(String source) {
+        return tryAcquire(source, false);
+    }
+
+    /**
+     * @param force send the request even if the circuit is open, as a probe: when all circuits are open,
+     *              this is the only way to find out whether a source has recovered
+     */
+    public boolean tryAcquire(String source, boolean force) {
+        return get(source).tryAcquire(System.currentTimeMillis(), force);
+    }
+
+    /**
+     * Release a request without result, e.g. because another source answered first
+     */
+    public void release(String source) {
+        get(source).release();
+    }
+
+    public void recordSuccess(String source, long millis) {
+        get(source).recordSuccess(millis);
+    }
+
+    public void recordFailure(String source) {
+        if (get(source).recordFailure(System.currentTimeMillis(), breakerFailures)) {
+            log.warn("TSA " + source + " failed repeatedly, not used for " + breakerOpenMillis + " ms");
+        }
+    }
+
+    /**
+     * State of all known sources, e.g. for the status endpoint
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, TsaStatus> source : sources.entrySet()) {
+            snapshot.put(source.getKey(), source.getValue().snapshot(now));
+        }
+        return snapshot;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Statistics and circuit state of one TSA source
+     */
+    public class TsaStatus {
+        //upper bounds of the latency histogram buckets in ms, the last bucket is unbounded
+        private final long[] bucketBounds = {10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+        private final long[] buckets = new long[bucketBounds.length + 1];
+        private final LatencyWindow recent = new LatencyWindow();
+
+        @Getter
+        private long successes;
+        @Getter
+        private long failures;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean open;
+        private boolean probing;
+
+        synchronized State getState(long now) {
+            if (!open) {
+                return State.CLOSED;
+            }
+            return (now - openedAt >= breakerOpenMillis && !probing) ? State.HALF_OPEN : State.OPEN;
+        }
+
+        synchronized boolean tryAcquire(long now, boolean force) {
+            switch (getState(now)) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    probing = true;
+                    return true;
+                default:
+                    //a forced request counts as probe, its result closes or reopens the circuit
+                    if (force) {
+                        probing = true;
+                    }
+                    return force;
+            }
+        }
+
+        synchronized void release() {
+            probing = false;
+        }
+
+        synchronized void recordSuccess(long millis) {
+            successes++;
+            consecutiveFailures = 0;
+            open = false;
+            probing = false;
+            int bucket = 0;
+            while (bucket < bucketBounds.length && millis > bucketBounds[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            recent.record(millis);
+        }
+
+        /**
+         * @return true if the circuit was opened by this failure
+         */
+        synchronized boolean recordFailure(long now, int threshold) {
+            failures++;
+            consecutiveFailures++;
+            boolean wasOpen = open;
+            if (probing || consecutiveFailures >= threshold) {
+                //a failed probe opens the circuit again
+                open = true;
+                openedAt = now;
+            }
+            probing = false;
+            return open && !wasOpen;
+        }
+
+        /**
+         * Median of the recent latencies, 0 if not enough were measured
+         */
+        long medianLatency() {
+            Long median = recent.percentile(50);
+            return median == null ? 0 : median;
+        }
+
+        /**
+         * The given percentile of the recent latencies, null if not enough were measured
+         */
+        public Long percentile(double percentile) {
+            return recent.percentile(percentile);
+        }
+
+        synchronized Map<String, Object> snapshot(long now) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("state", getState(now).name());
+            snapshot.put("successes", successes);
+            snapshot.put("failures", failures);
+            snapshot.put("consecutiveFailures", consecutiveFailures);
+            snapshot.put("p50", recent.percentile(50));
+            snapshot.put("p95", recent.percentile(95));
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                histogram.put(i < bucketBounds.length ? "le" + bucketBounds[i] : "inf", buckets[i]);
+            }
+            snapshot.put("histogram", histogram);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Latencies of the most recent successful requests to one source
+     */
+    static class LatencyWindow {
+        private final long[] samples = new long[128];
+        private int count;
+        private int position;
+
+        synchronized void record(long millis) {
+            samples[position] = millis;
+            position = (position + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized Long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return null;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.openpdfsign.dss;
+
+import eu.europa.esig.dss.enumerations.MimeTypeEnum;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.DSSMessageDigest;
+import eu.europa.esig.dss.pades.PAdESCommonParameters;
+import eu.europa.esig.dss.pades.SignatureImageParameters;
+import eu.europa.esig.dss.pdf.PDFServiceMode;
+import eu.europa.esig.dss.pdf.pdfbox.PdfBoxDocumentReader;
+import eu.europa.esig.dss.pdf.pdfbox.PdfBoxSignatureService;
+import eu.europa.esig.dss.pdf.pdfbox.visible.PdfBoxSignatureDrawer;
+import eu.europa.esig.dss.pdf.pdfbox.visible.PdfBoxSignatureDrawerFactory;
+import eu.europa.esig.dss.pdf.pdfbox.visible.nativedrawer.NativePdfBoxVisibleSignatureDrawer;
+import eu.europa.esig.dss.signature.resources.DSSResourcesHandler;
+import eu.europa.esig.dss.spi.DSSUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Signature service for new signature fields which lets the {@link NativePdfBoxVisibleSignatureTableDrawer} assign
+ * its appearance once PDFBox has added the signature field, instead of PDFBox copying it from a separately saved
+ * visual signature document. This is the signing path of every visible signature of open-pdf-sign.
+ * <p>
+ * Depends on DSS 6.0: the flow of the private PdfBoxSignatureService.signDocumentAndReturnDigest is repeated in
+ * {@link #sign}, with the appearance step added, and needs to be compared again when DSS is upgraded.
+ * As in DSS, computeDigest stores the prepared document in the {@link eu.europa.esig.dss.pdf.PdfSignatureCache},
+ * where DSS only replaces the signature value; signDocument draws and saves the document again only if the cached
+ * document is missing. Signing into an existing signature field is left to DSS.
+ */
+public class AppearanceAssigningPdfBoxSignatureService extends PdfBoxSignatureService {
+
+    public AppearanceAssigningPdfBoxSignatureService(PDFServiceMode serviceMode, PdfBoxSignatureDrawerFactory signatureDrawerFactory) {
+        super(serviceMode, signatureDrawerFactory);
+    }
+
+    @Override
+    protected DSSMessageDigest computeDigest(DSSDocument toSignDocument, PAdESCommonParameters parameters) {
+        if (parameters.getImageParameters().getFieldParameters().getFieldId() != null) {
+            return super.computeDigest(toSignDocument, parameters);
+        }
+        try (DSSResourcesHandler resourcesHandler = instantiateResourcesHandler();
+             OutputStream os = resourcesHandler.createOutputStream();
+             PdfBoxDocumentReader reader = load(toSignDocument, parameters.getPasswordProtection())) {
+            checkPdfPermissions(reader, parameters.getImageParameters().getFieldParameters());
+            DSSMessageDigest digest = sign(parameters, DSSUtils.EMPTY_BYTE_ARRAY, os, reader);
+            parameters.getPdfSignatureCache().setToBeSignedDocument(resourcesHandler.writeToDSSDocument());
+            return digest;
+        } catch (IOException e) {
+            throw new DSSException(e);
+        }
+    }
+
+    @Override
+    protected DSSDocument signDocument(DSSDocument toSignDocument, byte[] cmsSignedData, PAdESCommonParameters parameters) {
+        if (parameters.getImageParameters().getFieldParameters().getFieldId() != null) {
+            return super.signDocument(toSignDocument, cmsSignedData, parameters);
+        }
+        try (DSSResourcesHandler resourcesHandler = instantiateResourcesHandler();
+             OutputStream os = resourcesHandler.createOutputStream();
+             PdfBoxDocumentReader reader = load(toSignDocument, parameters.getPasswordProtection())) {
+            checkPdfPermissions(reader, parameters.getImageParameters().getFieldParameters());
+            sign(parameters, cmsSignedData, os, reader);
+            DSSDocument signedDocument = resourcesHandler.writeToDSSDocument();
+            signedDocument.setMimeType(MimeTypeEnum.PDF);
+            return signedDocument;
+        } catch (IOException e) {
+            throw new DSSException(e);
+        }
+    }
+
+    /**
+     * Load the document to sign, in main memory as DSS does
+     */
+    protected PdfBoxDocumentReader load(DSSDocument document, char[] passwordProtection) throws IOException {
+        return new PdfBoxDocumentReader(document, passwordProtection != null ? new String(passwordProtection) : null);
+    }
+
+    private DSSMessageDigest sign(PAdESCommonParameters parameters, byte[] cmsSignedData, OutputStream os,
+                                  PdfBoxDocumentReader reader) throws IOException {
+        PDDocument pdDocument = reader.getPDDocument();
+        MessageDigest digest = DSSUtils.getMessageDigest(parameters.getDigestAlgorithm());
+        SignatureInterface signatureInterface = content -> {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = content.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+            return cmsSignedData;
+        };
+        PDSignature pdSignature = createSignatureDictionary(pdDocument, parameters);
+        try (SignatureOptions options = new SignatureOptions()) {
+            options.setPreferredSignatureSize(parameters.getContentSize());
+            SignatureImageParameters imageParameters = parameters.getImageParameters();
+            PdfBoxSignatureDrawer signatureDrawer = null;
+            if (!imageParameters.isEmpty()) {
+                signatureDrawer = (PdfBoxSignatureDrawer) loadSignatureDrawer(imageParameters);
+                signatureDrawer.init(imageParameters, pdDocument, options);
+                if (signatureDrawer instanceof NativePdfBoxVisibleSignatureDrawer) {
+                    ((NativePdfBoxVisibleSignatureDrawer) signatureDrawer).setResourcesHandlerBuilder(resourcesHandlerBuilder);
+                }
+                getVisibleSignatureFieldBoxPosition(signatureDrawer, reader, imageParameters.getFieldParameters());
+                signatureDrawer.draw();
+            }
+            pdDocument.addSignature(pdSignature, signatureInterface, options);
+            if (signatureDrawer instanceof NativePdfBoxVisibleSignatureTableDrawer) {
+                ((NativePdfBoxVisibleSignatureTableDrawer) signatureDrawer).assignAppearance(pdSignature);
+            }
+            if (pdDocument.getDocumentId() == null) {
+                pdDocument.setDocumentId(reader.generateDocumentId(parameters));
+            }
+            checkEncryptedAndSaveIncrementally(pdDocument, os, parameters);
+            return new DSSMessageDigest(parameters.getDigestAlgorithm(), digest.digest());
+        }
+    }
+}
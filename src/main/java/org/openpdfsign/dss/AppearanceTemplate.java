@@ -0,0 +1,262 @@
+package org.openpdfsign.dss;
+
+import lombok.Getter;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.openpdfsign.TableSignatureFieldParameters;
+import org.vandeseer.easytable.TableDrawer;
+import org.vandeseer.easytable.settings.HorizontalAlignment;
+import org.vandeseer.easytable.settings.VerticalAlignment;
+import org.vandeseer.easytable.structure.Row;
+import org.vandeseer.easytable.structure.Table;
+import org.vandeseer.easytable.structure.cell.ImageCell;
+import org.vandeseer.easytable.structure.cell.TextCell;
+import org.vandeseer.easytable.util.PdfUtil;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The laid out and rendered signature table, without the signature date.
+ * The content stream and resource names are kept, so that for every signature only the date cell is drawn.
+ */
+@Getter
+public class AppearanceTemplate {
+    static final float IMAGE_COLUMN_WIDTH = 75;
+    static final float LABEL_COLUMN_WIDTH = 90;
+    static final float PADDING = 5;
+    static final float IMAGE_MAX_HEIGHT = 75;
+    static final float IMAGE_ONLY_PADDING = 2;
+    static final float IMAGE_ONLY_MAX_HEIGHT = 3 * 75;
+    static final int FONT_SIZE = 8;
+    static final PDFont DATE_FONT = PDType1Font.HELVETICA;
+
+    private final byte[] content;
+    private final float width;
+    private final float height;
+    private final Map<COSName, COSBase> fonts;
+    private final COSName imageName;
+    private final ImageAsset image;
+
+    //date cell, empty in the template
+    private final boolean hasDate;
+    private final float dateX;
+    private final float dateTopY;
+    private final float dateWidth;
+
+    private AppearanceTemplate(byte[] content, float width, float height, Map<COSName, COSBase> fonts, COSName imageName,
+                               ImageAsset image, boolean hasDate, float dateX, float dateTopY, float dateWidth) {
+        this.content = content;
+        this.width = width;
+        this.height = height;
+        this.fonts = fonts;
+        this.imageName = imageName;
+        this.image = image;
+        this.hasDate = hasDate;
+        this.dateX = dateX;
+        this.dateTopY = dateTopY;
+        this.dateWidth = dateWidth;
+    }
+
+    /**
+     * Width of the table, as resulting from the requested field width
+     */
+    static float tableWidth(float fieldWidth) {
+        return Math.max((IMAGE_COLUMN_WIDTH + LABEL_COLUMN_WIDTH + 50), fieldWidth);
+    }
+
+    /**
+     * Maximum size the image is displayed at, in points
+     */
+    static float maxImageWidth(float fieldWidth, boolean imageOnly) {
+        return imageOnly ? fieldWidth - 2 * IMAGE_ONLY_PADDING : IMAGE_COLUMN_WIDTH - 2 * PADDING;
+    }
+
+    static float maxImageHeight(boolean imageOnly) {
+        return imageOnly ? IMAGE_ONLY_MAX_HEIGHT : IMAGE_MAX_HEIGHT;
+    }
+
+    /**
+     * Number of lines the signature date is broken into, this determines the height of the table
+     */
+    static int dateLines(String signatureDate, float fieldWidth) throws IOException {
+        float dateColumnWidth = tableWidth(fieldWidth) - IMAGE_COLUMN_WIDTH - LABEL_COLUMN_WIDTH;
+        List<String> lines = PdfUtil.getOptimalTextBreakLines(signatureDate, DATE_FONT, FONT_SIZE, dateColumnWidth - 2 * PADDING);
+        return Math.max(1, lines.size());
+    }
+
+    static AppearanceTemplate build(TableSignatureFieldParameters tableParameters, ImageAsset image, float fieldWidth, int dateLines) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject imageXObject = image.createXObject(doc);
+
+            Table.TableBuilder myTableBuilder = Table.builder();
+            boolean hasDate = !tableParameters.getImageOnly();
+
+            if (tableParameters.getImageOnly()) {
+                //image only as single-cell
+                myTableBuilder.addColumnsOfWidth(fieldWidth)
+                        .backgroundColor(Color.white)
+                        .borderWidth(0)
+                        .padding(IMAGE_ONLY_PADDING)
+                        .verticalAlignment(VerticalAlignment.TOP)
+                        .addRow(Row.builder()
+                                .add(ImageCell.builder().image(imageXObject).maxHeight(IMAGE_ONLY_MAX_HEIGHT)
+                                        .verticalAlignment(VerticalAlignment.MIDDLE).horizontalAlignment(HorizontalAlignment.CENTER).build())
+                                .build());
+            }
+            else {
+                //calculate dynamic width, if any
+                float tableWidth = tableWidth(fieldWidth);
+
+                //the date cell keeps its height, but stays empty
+                StringBuilder datePlaceholder = new StringBuilder(" ");
+                for (int i = 1; i < dateLines; i++) {
+                    datePlaceholder.append("\n ");
+                }
+
+                // Build the table
+                boolean hasHint = tableParameters.getHint() != null;
+                myTableBuilder
+                        .addColumnsOfWidth(IMAGE_COLUMN_WIDTH, LABEL_COLUMN_WIDTH, (tableWidth - IMAGE_COLUMN_WIDTH - LABEL_COLUMN_WIDTH))
+                        .backgroundColor(Color.WHITE)
+                        .borderWidth(0.75f)
+                        .padding(PADDING)
+                        .fontSize(FONT_SIZE)
+                        .verticalAlignment(VerticalAlignment.TOP)
+                        .addRow(Row.builder()
+                                .add(ImageCell.builder().image(imageXObject).maxHeight(IMAGE_MAX_HEIGHT)
+                                        .verticalAlignment(VerticalAlignment.MIDDLE).horizontalAlignment(HorizontalAlignment.CENTER).rowSpan((hasHint ? 3 : 2)).build())
+                                .add(TextCell.builder().text(tableParameters.getLabelSignee()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
+                                .add(TextCell.builder().text(tableParameters.getSignaturString()).build())
+                                .build())
+                        .addRow(Row.builder()
+                                .add(TextCell.builder().text(tableParameters.getLabelTimestamp()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
+                                .add(TextCell.builder().text(datePlaceholder.toString()).build())
+                                .build());
+
+                if (hasHint) {
+                    myTableBuilder = myTableBuilder.addRow(Row.builder()
+                            .add(TextCell.builder().text(tableParameters.getLabelHint()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
+                            .add(TextCell.builder().text(tableParameters.getHint()).build())
+                            .build());
+                }
+            }
+
+            Table myTable = myTableBuilder.build();
+
+            PDStream stream = new PDStream(doc);
+            PDFormXObject form = new PDFormXObject(stream);
+            PDResources res = new PDResources();
+            form.setResources(res);
+            PDAppearanceStream appearanceStream = new PDAppearanceStream(form.getCOSObject());
+
+            try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream)) {
+                // Set up the drawer
+                TableDrawer tableDrawer = TableDrawer.builder()
+                        .contentStream(cs)
+                        .startX(0) //start from left
+                        .startY(myTable.getHeight()) //start from bottom because why not (in pdf)
+                        .table(myTable)
+                        .build();
+
+                // And go for it!
+                cs.saveGraphicsState();
+                tableDrawer.draw();
+                cs.restoreGraphicsState();
+            }
+
+            //remember the resource names used by the content stream
+            Map<COSName, COSBase> fonts = new LinkedHashMap<>();
+            COSDictionary fontDictionary = res.getCOSObject().getCOSDictionary(COSName.FONT);
+            for (COSName fontName : res.getFontNames()) {
+                fonts.put(fontName, fontDictionary.getDictionaryObject(fontName));
+            }
+            COSName imageResourceName = null;
+            for (COSName xObjectName : res.getXObjectNames()) {
+                imageResourceName = xObjectName;
+            }
+
+            float dateX = 0;
+            float dateTopY = 0;
+            float dateWidth = 0;
+            if (hasDate) {
+                dateX = IMAGE_COLUMN_WIDTH + LABEL_COLUMN_WIDTH;
+                dateWidth = myTable.getWidth() - dateX;
+                //the date is in the second row
+                dateTopY = myTable.getHeight() - myTable.getRows().get(0).getHeight();
+            }
+
+            return new AppearanceTemplate(stream.toByteArray(), myTable.getWidth(), myTable.getHeight(), fonts,
+                    imageResourceName, image, hasDate, dateX, dateTopY, dateWidth);
+        }
+    }
+
+    /**
+     * Resources for the appearance stream in the given document, under the names used by the template
+     */
+    PDResources createResources(PDDocument doc) throws IOException {
+        PDResources res = new PDResources();
+        COSDictionary fontDictionary = new COSDictionary();
+        for (Map.Entry<COSName, COSBase> font : fonts.entrySet()) {
+            fontDictionary.setItem(font.getKey(), font.getValue());
+        }
+        res.getCOSObject().setItem(COSName.FONT, fontDictionary);
+        if (this.imageName != null) {
+            res.put(imageName, image.createXObject(doc));
+        }
+        return res;
+    }
+
+    /**
+     * Write the template content and the signature date into the appearance stream
+     */
+    void writeContent(PDDocument doc, PDAppearanceStream appearanceStream, String signatureDate) throws IOException {
+        OutputStream os = appearanceStream.getStream().createOutputStream();
+        try {
+            os.write(content);
+            os.write('\n');
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+
+        try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream, os)) {
+            if (hasDate) {
+                Table dateTable = Table.builder()
+                        .addColumnsOfWidth(dateWidth)
+                        .borderWidth(0)
+                        .padding(PADDING)
+                        .fontSize(FONT_SIZE)
+                        .font(DATE_FONT)
+                        .verticalAlignment(VerticalAlignment.TOP)
+                        .addRow(Row.builder()
+                                .add(TextCell.builder().text(signatureDate).build())
+                                .build())
+                        .build();
+                cs.saveGraphicsState();
+                TableDrawer.builder()
+                        .contentStream(cs)
+                        .startX(dateX)
+                        .startY(dateTopY)
+                        .table(dateTable)
+                        .build()
+                        .draw();
+                cs.restoreGraphicsState();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.openpdfsign.dss;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.openpdfsign.Configuration;
+import org.openpdfsign.TableSignatureFieldParameters;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of {@link AppearanceTemplate}s.
+ * Templates are keyed by everything that is rendered into them; the signature date is drawn separately for every signature.
+ */
+@Slf4j
+public class AppearanceTemplateCache {
+    private static final int DEFAULT_SIZE = 64;
+    private static AppearanceTemplateCache INSTANCE;
+
+    private final Map<TemplateKey, AppearanceTemplate> templates;
+
+    private AppearanceTemplateCache(int maxEntries) {
+        this.templates = new LinkedHashMap<TemplateKey, AppearanceTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TemplateKey, AppearanceTemplate> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static synchronized AppearanceTemplateCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new AppearanceTemplateCache(Configuration.getInstance().getProperties().getInt("appearance_cache_size", DEFAULT_SIZE));
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Get the template for the given field, rendering it if it is not cached yet
+     */
+    public AppearanceTemplate getTemplate(TableSignatureFieldParameters tableParameters, byte[] image, float fieldWidth) throws IOException {
+        String imageDigest = ImageAssetCache.digest(image);
+        int dateLines = tableParameters.getImageOnly() ? 0 : AppearanceTemplate.dateLines(tableParameters.getSignatureDate(), fieldWidth);
+        TemplateKey key = new TemplateKey(tableParameters.getSignaturString(), tableParameters.getLabelSignee(),
+                tableParameters.getLabelTimestamp(), tableParameters.getLabelHint(), tableParameters.getHint(),
+                imageDigest, fieldWidth, tableParameters.getImageOnly(), dateLines);
+
+        AppearanceTemplate template;
+        synchronized (templates) {
+            template = templates.get(key);
+        }
+        if (template == null) {
+            //rendered outside the lock, concurrent misses for the same key render the same template
+            log.debug("Rendering signature appearance template");
+            boolean imageOnly = tableParameters.getImageOnly();
+            ImageAsset asset = ImageAssetCache.getInstance().getAsset(image, imageDigest,
+                    AppearanceTemplate.maxImageWidth(fieldWidth, imageOnly), AppearanceTemplate.maxImageHeight(imageOnly));
+            template = AppearanceTemplate.build(tableParameters, asset, fieldWidth, dateLines);
+            synchronized (templates) {
+                templates.put(key, template);
+            }
+        }
+        return template;
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    @Value
+    private static class TemplateKey {
+        String signer;
+        String labelSignee;
+        String labelTimestamp;
+        String labelHint;
+        String hint;
+        String imageDigest;
+        float width;
+        boolean imageOnly;
+        int dateLines;
+    }
+}
@@ -0,0 +1,53 @@
+package org.openpdfsign.dss;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.pades.exception.InvalidPasswordException;
+import eu.europa.esig.dss.pdf.PDFServiceMode;
+import eu.europa.esig.dss.pdf.pdfbox.PdfBoxDocumentReader;
+import eu.europa.esig.dss.pdf.pdfbox.visible.PdfBoxSignatureDrawerFactory;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Signature service which parses the document with bounded memory: PDFBox keeps up to the memory limit in main
+ * memory and the rest in a scratch file. DSS 6.0 always loads the whole document into main memory, so the document
+ * is loaded here with a {@link MemoryUsageSetting} for the signing flow of
+ * {@link AppearanceAssigningPdfBoxSignatureService}.
+ */
+public class BoundedMemoryPdfBoxSignatureService extends AppearanceAssigningPdfBoxSignatureService {
+    private final long memoryLimit;
+    private final File tempDirectory;
+
+    /**
+     * @param memoryLimit bytes of main memory used for parsing a document
+     * @param tempDirectory directory of the scratch files, or null for the default temporary directory
+     */
+    public BoundedMemoryPdfBoxSignatureService(PDFServiceMode serviceMode, PdfBoxSignatureDrawerFactory signatureDrawerFactory,
+                                               long memoryLimit, File tempDirectory) {
+        super(serviceMode, signatureDrawerFactory);
+        this.memoryLimit = memoryLimit;
+        this.tempDirectory = tempDirectory;
+    }
+
+    @Override
+    protected PdfBoxDocumentReader load(DSSDocument document, char[] passwordProtection) throws IOException {
+        String password = passwordProtection != null ? new String(passwordProtection) : null;
+        MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupMixed(memoryLimit).setTempDir(tempDirectory);
+        try {
+            if (document instanceof FileDocument) {
+                //read in place, not through a stream which PDFBox would copy
+                return new PdfBoxDocumentReader(PDDocument.load(((FileDocument) document).getFile(), password, memoryUsageSetting));
+            }
+            try (InputStream is = document.openStream()) {
+                return new PdfBoxDocumentReader(PDDocument.load(is, password, null, null, memoryUsageSetting));
+            }
+        } catch (org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException e) {
+            throw new InvalidPasswordException(String.format("Encrypted document : %s", e.getMessage()));
+        }
+    }
+}
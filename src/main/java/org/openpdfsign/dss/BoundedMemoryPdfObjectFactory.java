@@ -0,0 +1,53 @@
+package org.openpdfsign.dss;
+
+import eu.europa.esig.dss.pdf.PDFServiceMode;
+import eu.europa.esig.dss.pdf.PDFSignatureService;
+import eu.europa.esig.dss.pdf.pdfbox.PdfBoxNativeObjectFactory;
+import eu.europa.esig.dss.pdf.pdfbox.visible.PdfBoxSignatureDrawerFactory;
+import eu.europa.esig.dss.pdf.pdfbox.visible.nativedrawer.PdfBoxNativeSignatureDrawerFactory;
+
+import java.io.File;
+
+/**
+ * Object factory whose services parse documents with bounded memory, see {@link BoundedMemoryPdfBoxSignatureService}
+ */
+public class BoundedMemoryPdfObjectFactory extends PdfBoxNativeObjectFactory {
+    private final PdfBoxSignatureDrawerFactory signatureDrawerFactory;
+    private final long memoryLimit;
+    private final File tempDirectory;
+
+    /**
+     * @param signatureDrawerFactory drawer of visible signatures, or null for the DSS native drawer
+     * @param memoryLimit bytes of main memory used for parsing a document
+     * @param tempDirectory directory of the scratch files
+     */
+    public BoundedMemoryPdfObjectFactory(PdfBoxSignatureDrawerFactory signatureDrawerFactory, long memoryLimit, File tempDirectory) {
+        this.signatureDrawerFactory = signatureDrawerFactory != null ? signatureDrawerFactory : new PdfBoxNativeSignatureDrawerFactory();
+        this.memoryLimit = memoryLimit;
+        this.tempDirectory = tempDirectory;
+    }
+
+    @Override
+    public PDFSignatureService newPAdESSignatureService() {
+        return newService(PDFServiceMode.SIGNATURE);
+    }
+
+    @Override
+    public PDFSignatureService newContentTimestampService() {
+        return newService(PDFServiceMode.CONTENT_TIMESTAMP);
+    }
+
+    @Override
+    public PDFSignatureService newSignatureTimestampService() {
+        return newService(PDFServiceMode.SIGNATURE_TIMESTAMP);
+    }
+
+    @Override
+    public PDFSignatureService newArchiveTimestampService() {
+        return newService(PDFServiceMode.ARCHIVE_TIMESTAMP);
+    }
+
+    private PDFSignatureService newService(PDFServiceMode serviceMode) {
+        return configure(new BoundedMemoryPdfBoxSignatureService(serviceMode, signatureDrawerFactory, memoryLimit, tempDirectory));
+    }
+}
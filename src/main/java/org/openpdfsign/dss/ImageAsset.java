@@ -0,0 +1,111 @@
+package org.openpdfsign.dss;
+
+import lombok.Getter;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An image XObject, encoded once, which can be embedded into any number of documents.
+ * The encoded stream data is copied as-is, so the image is neither decoded nor compressed again.
+ */
+@Getter
+public class ImageAsset {
+    private final String digest;
+    private final int width;
+    private final int height;
+    private final Map<COSName, COSBase> dictionary;
+    private final byte[] encoded;
+    private final ImageAsset softMask;
+
+    private ImageAsset(String digest, int width, int height, Map<COSName, COSBase> dictionary, byte[] encoded, ImageAsset softMask) {
+        this.digest = digest;
+        this.width = width;
+        this.height = height;
+        this.dictionary = dictionary;
+        this.encoded = encoded;
+        this.softMask = softMask;
+    }
+
+    /**
+     * Take over the encoded stream of an image created in a scratch document
+     */
+    static ImageAsset of(String digest, PDImageXObject image) throws IOException {
+        return of(digest, image.getCOSObject());
+    }
+
+    private static ImageAsset of(String digest, COSStream stream) throws IOException {
+        Map<COSName, COSBase> dictionary = new LinkedHashMap<>();
+        ImageAsset softMask = null;
+        for (COSName key : stream.keySet()) {
+            COSBase value = stream.getDictionaryObject(key);
+            if (COSName.LENGTH.equals(key)) {
+                continue;
+            }
+            if (COSName.SMASK.equals(key) && value instanceof COSStream) {
+                softMask = of(digest, (COSStream) value);
+                continue;
+            }
+            dictionary.put(key, copy(value));
+        }
+        byte[] encoded;
+        try (InputStream is = stream.createRawInputStream()) {
+            encoded = IOUtils.toByteArray(is);
+        }
+        return new ImageAsset(digest, stream.getInt(COSName.WIDTH), stream.getInt(COSName.HEIGHT), dictionary, encoded, softMask);
+    }
+
+    /**
+     * Create the image XObject in the given document
+     */
+    public PDImageXObject createXObject(PDDocument doc) throws IOException {
+        return new PDImageXObject(new PDStream(createStream(doc)), null);
+    }
+
+    private COSStream createStream(PDDocument doc) throws IOException {
+        COSStream stream = doc.getDocument().createCOSStream();
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+            stream.setItem(entry.getKey(), copy(entry.getValue()));
+        }
+        if (softMask != null) {
+            stream.setItem(COSName.SMASK, softMask.createStream(doc));
+        }
+        try (OutputStream os = stream.createRawOutputStream()) {
+            os.write(encoded);
+        }
+        return stream;
+    }
+
+    /**
+     * Image dictionaries only hold names, numbers, arrays and dictionaries of these (e.g. DecodeParms)
+     */
+    private static COSBase copy(COSBase value) {
+        if (value instanceof COSArray) {
+            COSArray array = new COSArray();
+            for (COSBase element : (COSArray) value) {
+                array.add(copy(element));
+            }
+            return array;
+        }
+        if (value instanceof COSDictionary && !(value instanceof COSStream)) {
+            COSDictionary dictionary = new COSDictionary();
+            for (COSName key : ((COSDictionary) value).keySet()) {
+                dictionary.setItem(key, copy(((COSDictionary) value).getDictionaryObject(key)));
+            }
+            return dictionary;
+        }
+        return value;
+    }
+}
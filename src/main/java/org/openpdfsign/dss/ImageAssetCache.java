@@ -0,0 +1,149 @@
+package org.openpdfsign.dss;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.openpdfsign.Configuration;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of signature images, decoded, downsampled and encoded once.
+ * Images are downsampled to the resolution needed for the size they are displayed at (signature_image_dpi).
+ */
+@Slf4j
+public class ImageAssetCache {
+    private static final int DEFAULT_SIZE = 16;
+    private static final int DEFAULT_DPI = 300;
+    private static final float POINTS_PER_INCH = 72;
+    private static ImageAssetCache INSTANCE;
+
+    private final Map<AssetKey, ImageAsset> assets;
+    private final int dpi;
+
+    private ImageAssetCache(int maxEntries, int dpi) {
+        this.dpi = Math.max((int) POINTS_PER_INCH, dpi);
+        this.assets = new LinkedHashMap<AssetKey, ImageAsset>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<AssetKey, ImageAsset> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static synchronized ImageAssetCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new ImageAssetCache(
+                    Configuration.getInstance().getProperties().getInt("image_cache_size", DEFAULT_SIZE),
+                    Configuration.getInstance().getProperties().getInt("signature_image_dpi", DEFAULT_DPI));
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Get the asset for an image displayed within maxWidth x maxHeight points
+     */
+    public ImageAsset getAsset(byte[] image, float maxWidth, float maxHeight) throws IOException {
+        return getAsset(image, digest(image), maxWidth, maxHeight);
+    }
+
+    ImageAsset getAsset(byte[] image, String digest, float maxWidth, float maxHeight) throws IOException {
+        AssetKey key = new AssetKey(digest, maxWidth, maxHeight);
+        ImageAsset asset;
+        synchronized (assets) {
+            asset = assets.get(key);
+        }
+        if (asset == null) {
+            log.debug("Encoding signature image");
+            asset = encode(image, digest, maxWidth, maxHeight);
+            synchronized (assets) {
+                assets.put(key, asset);
+            }
+        }
+        return asset;
+    }
+
+    public int size() {
+        synchronized (assets) {
+            return assets.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (assets) {
+            assets.clear();
+        }
+    }
+
+    private ImageAsset encode(byte[] image, String digest, float maxWidth, float maxHeight) throws IOException {
+        boolean jpeg = image.length > 2 && (image[0] & 0xff) == 0xff && (image[1] & 0xff) == 0xd8;
+        BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(image));
+        if (bufferedImage == null) {
+            //format not known to ImageIO, let PDFBox handle it
+            try (PDDocument doc = new PDDocument()) {
+                return ImageAsset.of(digest, PDImageXObject.createFromByteArray(doc, image, null));
+            }
+        }
+
+        //displayed size in points: scaled down to fit, never up
+        float scale = Math.min(1, Math.min(maxWidth / bufferedImage.getWidth(), maxHeight / bufferedImage.getHeight()));
+        int targetWidth = (int) Math.ceil(bufferedImage.getWidth() * scale * dpi / POINTS_PER_INCH);
+        int targetHeight = (int) Math.ceil(bufferedImage.getHeight() * scale * dpi / POINTS_PER_INCH);
+        boolean downsample = targetWidth < bufferedImage.getWidth() && targetHeight < bufferedImage.getHeight();
+
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject imageXObject;
+            if (!downsample && jpeg) {
+                //DCT data is embedded as-is
+                imageXObject = JPEGFactory.createFromByteArray(doc, image);
+            } else {
+                if (downsample) {
+                    log.debug("Downsampling signature image from " + bufferedImage.getWidth() + "x" + bufferedImage.getHeight()
+                            + " to " + targetWidth + "x" + targetHeight);
+                    bufferedImage = scale(bufferedImage, targetWidth, targetHeight);
+                }
+                imageXObject = jpeg ? JPEGFactory.createFromImage(doc, bufferedImage) : LosslessFactory.createFromImage(doc, bufferedImage);
+            }
+            return ImageAsset.of(digest, imageXObject);
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.drawImage(image.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    static String digest(byte[] image) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(image));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Value
+    private static class AssetKey {
+        String digest;
+        float maxWidth;
+        float maxHeight;
+    }
+}
@@ -1,180 +1,95 @@
 package org.openpdfsign.dss;
 
-import eu.europa.esig.dss.model.DSSDocument;
 import eu.europa.esig.dss.pdf.pdfbox.visible.nativedrawer.NativePdfBoxVisibleSignatureDrawer;
-import eu.europa.esig.dss.pdf.visible.ImageRotationUtils;
 import eu.europa.esig.dss.pdf.visible.ImageUtils;
 import eu.europa.esig.dss.pdf.visible.SignatureFieldDimensionAndPosition;
 import org.apache.pdfbox.io.IOUtils;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.PDStream;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
-import org.apache.pdfbox.util.Matrix;
 import org.openpdfsign.TableSignatureFieldParameters;
-import org.vandeseer.easytable.TableDrawer;
-import org.vandeseer.easytable.settings.HorizontalAlignment;
-import org.vandeseer.easytable.settings.VerticalAlignment;
-import org.vandeseer.easytable.structure.Row;
-import org.vandeseer.easytable.structure.Table;
-import org.vandeseer.easytable.structure.cell.ImageCell;
-import org.vandeseer.easytable.structure.cell.TextCell;
 
-import java.awt.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.List;
 
 public class NativePdfBoxVisibleSignatureTableDrawer extends NativePdfBoxVisibleSignatureDrawer {
+    private PDRectangle signatureRectangle;
+    private PDAppearanceStream appearanceStream;
 
     @Override
     public void draw() throws IOException {
-        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PDImageXObject imageXObject = PDImageXObject.createFromByteArray(doc, IOUtils.toByteArray(parameters.getImage().openStream()), parameters.getImage().getName());
+        //Get information of type TableSignatureFieldParameters
+        TableSignatureFieldParameters tableParameters = null;
+        if (parameters.getFieldParameters() instanceof TableSignatureFieldParameters) {
+            tableParameters = (TableSignatureFieldParameters) parameters.getFieldParameters();
+        }
 
-            //Get information of type TableSignatureFieldParameters
-            TableSignatureFieldParameters tableParameters = null;
-            if (parameters.getFieldParameters() instanceof TableSignatureFieldParameters) {
-                tableParameters = (TableSignatureFieldParameters) parameters.getFieldParameters();
-            }
+        //disable "missing font / rebuild cache" logging
+        java.util.logging.Logger.getLogger("org.apache.pdfbox").setLevel(java.util.logging.Level.OFF);
+        java.util.logging.Logger.getLogger("org.apache.fontbox").setLevel(java.util.logging.Level.OFF);
 
+        //the table is laid out and rendered once per signer, labels, image and width; only the date is drawn here
+        byte[] image = IOUtils.toByteArray(parameters.getImage().openStream());
+        AppearanceTemplate template = AppearanceTemplateCache.getInstance().getTemplate(tableParameters, image,
+                parameters.getFieldParameters().getWidth());
 
-            int pageNumber = parameters.getFieldParameters().getPage() - ImageUtils.DEFAULT_FIRST_PAGE;
-            PDPage originalPage = document.getPage(pageNumber);
+        int pageNumber = parameters.getFieldParameters().getPage() - ImageUtils.DEFAULT_FIRST_PAGE;
+        PDPage originalPage = document.getPage(pageNumber);
 
+        SignatureFieldDimensionAndPosition dimensionAndPosition = buildSignatureFieldBox();
 
-            // create a new page
-            PDPage page = new PDPage(originalPage.getMediaBox());
-            doc.addPage(page);
-            PDAcroForm acroForm = new PDAcroForm(doc);
-            doc.getDocumentCatalog().setAcroForm(acroForm);
-            PDSignatureField signatureField = new PDSignatureField(acroForm);
-            PDAnnotationWidget widget = signatureField.getWidgets().get(0);
-            List<PDField> acroFormFields = acroForm.getFields();
-            acroForm.setSignaturesExist(true);
-            acroForm.setAppendOnly(true);
-            acroForm.getCOSObject().setDirect(true);
-            acroFormFields.add(signatureField);
+        dimensionAndPosition.setBoxHeight(template.getHeight()); //
+        dimensionAndPosition.setBoxWidth(template.getWidth()); //
+        PDRectangle rectangle = getPdRectangle(dimensionAndPosition, originalPage);
 
-            //disable "missing font / rebuild cache" logging
-            java.util.logging.Logger.getLogger("org.apache.pdfbox").setLevel(java.util.logging.Level.OFF);
-            java.util.logging.Logger.getLogger("org.apache.fontbox").setLevel(java.util.logging.Level.OFF);
+        //the appearance stream, its image and resources are created directly in the signed document,
+        //so they do not go through saving and re-parsing the visual signature document
+        PDStream stream = new PDStream(document);
+        PDFormXObject form = new PDFormXObject(stream);
+        PDResources res = template.createResources(document);
+        form.setResources(res);
+        form.setFormType(1);
 
-            Table.TableBuilder myTableBuilder = Table.builder();
+        form.setBBox(new PDRectangle(rectangle.getWidth(), rectangle.getHeight()));
 
-            if (tableParameters.getImageOnly()) {
-                //image only as single-cell
-                myTableBuilder.addColumnsOfWidth(parameters.getFieldParameters().getWidth())
-                        .backgroundColor(Color.white)
-                        .borderWidth(0)
-                        .padding(2)
-                        .verticalAlignment(VerticalAlignment.TOP)
-                        .addRow(Row.builder()
-                                .add(ImageCell.builder().image(imageXObject).maxHeight(3 * 75)
-                                        .verticalAlignment(VerticalAlignment.MIDDLE).horizontalAlignment(HorizontalAlignment.CENTER).build())
-                                .build());
-            }
-            else {
-                //calculate dynamic width, if any
-                final float imageColumnWidth = 75;
-                final float labelColumnWidth = 90;
-                float tableWidth = parameters.getFieldParameters().getWidth();
-                tableWidth = Math.max((imageColumnWidth + labelColumnWidth + 50), tableWidth);
+        appearanceStream = new PDAppearanceStream(form.getCOSObject());
+        template.writeContent(document, appearanceStream, tableParameters.getSignatureDate());
+        signatureRectangle = rectangle;
 
-                // Build the table
-                boolean hasHint = tableParameters.getHint() != null;
-                myTableBuilder
-                        .addColumnsOfWidth(imageColumnWidth, labelColumnWidth, (tableWidth - imageColumnWidth - labelColumnWidth))
-                        .backgroundColor(Color.WHITE)
-                        .borderWidth(0.75f)
-                        .padding(5)
-                        .fontSize(8)
-                        .verticalAlignment(VerticalAlignment.TOP)
-                        .addRow(Row.builder()
-                                .add(ImageCell.builder().image(imageXObject).maxHeight(75)
-                                        .verticalAlignment(VerticalAlignment.MIDDLE).horizontalAlignment(HorizontalAlignment.CENTER).rowSpan((hasHint ? 3 : 2)).build())
-                                .add(TextCell.builder().text(tableParameters.getLabelSignee()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
-                                .add(TextCell.builder().text(tableParameters.getSignaturString()).build())
-                                .build())
-                        .addRow(Row.builder()
-                                //.height(100f)
-                                .add(TextCell.builder().text(tableParameters.getLabelTimestamp()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
-                                .add(TextCell.builder().text(tableParameters.getSignatureDate()).build())
-                                .build());
+        //no visual signature document: PDFBox would save and parse it again only to copy its widget position and
+        //appearance, both are assigned to the widget of the signature field directly, see assignAppearance
+        signatureOptions.setPage(pageNumber);
+    }
 
-                if (hasHint) {
-                    myTableBuilder = myTableBuilder.addRow(Row.builder()
-                            //.height(100f)
-                            .add(TextCell.builder().text(tableParameters.getLabelHint()).font(PDType1Font.HELVETICA_BOLD).horizontalAlignment(HorizontalAlignment.RIGHT).build())
-                            .add(TextCell.builder().text(tableParameters.getHint()).build())
-                            .build());
+    /**
+     * Put the prepared position and appearance on the widget of the signature field, once PDFBox has added it
+     * to the document; the drawer is therefore used by {@link AppearanceAssigningPdfBoxSignatureService} only
+     */
+    public void assignAppearance(PDSignature signature) throws IOException {
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+        if (acroForm != null) {
+            for (PDField field : acroForm.getFieldTree()) {
+                if (field instanceof PDSignatureField && ((PDSignatureField) field).getSignature() != null &&
+                        ((PDSignatureField) field).getSignature().getCOSObject() == signature.getCOSObject()) {
+                    PDAnnotationWidget widget = field.getWidgets().get(0);
+                    widget.setRectangle(signatureRectangle);
+                    PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+                    appearance.getCOSObject().setDirect(true);
+                    appearance.setNormalAppearance(appearanceStream);
+                    widget.setAppearance(appearance);
+                    return;
                 }
             }
-
-            Table myTable = myTableBuilder.build();
-
-            SignatureFieldDimensionAndPosition dimensionAndPosition = buildSignatureFieldBox();
-
-            dimensionAndPosition.setBoxHeight(myTable.getHeight()); //
-            dimensionAndPosition.setBoxWidth(myTable.getWidth()); //
-            PDRectangle rectangle = getPdRectangle(dimensionAndPosition, page);
-            widget.setRectangle(rectangle);
-
-            PDStream stream = new PDStream(doc);
-            PDFormXObject form = new PDFormXObject(stream);
-            PDResources res = new PDResources();
-            form.setResources(res);
-            form.setFormType(1);
-
-            form.setBBox(new PDRectangle(rectangle.getWidth(), rectangle.getHeight()));
-
-            PDAppearanceDictionary appearance = new PDAppearanceDictionary();
-            appearance.getCOSObject().setDirect(true);
-            PDAppearanceStream appearanceStream = new PDAppearanceStream(form.getCOSObject());
-            appearance.setNormalAppearance(appearanceStream);
-            widget.setAppearance(appearance);
-
-            try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream)) {
-                // Set up the drawer
-                TableDrawer tableDrawer = TableDrawer.builder()
-                        .contentStream(cs)
-                        .startX(0) //start from left
-                        .startY(myTable.getHeight()) //start from bottom because why not (in pdf)
-                        .table(myTable)
-                        .build();
-
-
-                // And go for it!
-                cs.saveGraphicsState();
-                tableDrawer.draw();
-                cs.transform(Matrix.getRotateInstance(
-                        ((double) 360 - ImageRotationUtils.getRotation(parameters.getRotation())), 400, 200));
-
-                cs.restoreGraphicsState();
-
-            }
-
-            doc.save(baos);
-
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray())) {
-                signatureOptions.setVisualSignature(bais);
-                signatureOptions.setPage(pageNumber);
-            }
-
         }
+        throw new IOException("No signature field for the signature");
     }
 
     private PDRectangle getPdRectangle(SignatureFieldDimensionAndPosition dimensionAndPosition, PDPage page) {
@@ -188,52 +103,4 @@ public class NativePdfBoxVisibleSignatureTableDrawer extends NativePdfBoxVisible
         pdRectangle.setUpperRightY(pageRect.getHeight() - dimensionAndPosition.getBoxY());
         return pdRectangle;
     }
-
-    private void rotateSignature(PDPageContentStream cs, PDRectangle rectangle,
-                                 SignatureFieldDimensionAndPosition dimensionAndPosition) throws IOException {
-        switch (dimensionAndPosition.getGlobalRotation()) {
-            case ImageRotationUtils.ANGLE_90:
-                // pdfbox rotates in the opposite way
-                cs.transform(Matrix.getRotateInstance(Math.toRadians(ImageRotationUtils.ANGLE_270), 0, 0));
-                cs.transform(Matrix.getTranslateInstance(-rectangle.getHeight(), 0));
-                break;
-            case ImageRotationUtils.ANGLE_180:
-                cs.transform(Matrix.getRotateInstance(Math.toRadians(ImageRotationUtils.ANGLE_180), 0, 0));
-                cs.transform(Matrix.getTranslateInstance(-rectangle.getWidth(), -rectangle.getHeight()));
-                break;
-            case ImageRotationUtils.ANGLE_270:
-                cs.transform(Matrix.getRotateInstance(Math.toRadians(ImageRotationUtils.ANGLE_90), 0, 0));
-                cs.transform(Matrix.getTranslateInstance(0, -rectangle.getWidth()));
-                break;
-            case ImageRotationUtils.ANGLE_360:
-            case ImageRotationUtils.ANGLE_0:
-                // do nothing
-                break;
-            default:
-                throw new IllegalStateException(ImageRotationUtils.SUPPORTED_ANGLES_ERROR_MESSAGE);
-        }
-    }
-
-    private void setImage(PDPageContentStream cs, PDDocument doc,
-                          SignatureFieldDimensionAndPosition dimensionAndPosition, DSSDocument image) throws IOException {
-        if (image != null) {
-            try (InputStream is = image.openStream()) {
-                cs.saveGraphicsState();
-                byte[] bytes = IOUtils.toByteArray(is);
-                PDImageXObject imageXObject = PDImageXObject.createFromByteArray(doc, bytes, image.getName());
-
-                float xAxis = dimensionAndPosition.getImageX();
-                float yAxis = dimensionAndPosition.getImageY();
-                float width = dimensionAndPosition.getImageWidth();
-                float height = dimensionAndPosition.getImageHeight();
-
-                cs.drawImage(imageXObject, xAxis, yAxis, width, height);
-                cs.transform(Matrix.getRotateInstance(
-                        ((double) 360 - ImageRotationUtils.getRotation(parameters.getRotation())), width, height));
-
-                cs.restoreGraphicsState();
-            }
-        }
-    }
-
 }
@@ -4,7 +4,6 @@ import eu.europa.esig.dss.pades.SignatureImageParameters;
 import eu.europa.esig.dss.pdf.PDFServiceMode;
 import eu.europa.esig.dss.pdf.PDFSignatureService;
 import eu.europa.esig.dss.pdf.pdfbox.PdfBoxNativeObjectFactory;
-import eu.europa.esig.dss.pdf.pdfbox.PdfBoxSignatureService;
 import eu.europa.esig.dss.pdf.pdfbox.visible.PdfBoxSignatureDrawerFactory;
 import eu.europa.esig.dss.pdf.visible.SignatureDrawer;
 
@@ -13,11 +12,19 @@ public class PdfBoxNativeTableObjectFactory extends PdfBoxNativeObjectFactory
 
     @Override
     public PDFSignatureService newPAdESSignatureService() {
-        return new PdfBoxSignatureService(PDFServiceMode.SIGNATURE, new PdfBoxSignatureDrawerFactory() {
+        //the table drawer needs the signature service which assigns its appearance
+        return configure(new AppearanceAssigningPdfBoxSignatureService(PDFServiceMode.SIGNATURE, tableDrawerFactory()));
+    }
+
+    /**
+     * Drawer factory of the signature table
+     */
+    public static PdfBoxSignatureDrawerFactory tableDrawerFactory() {
+        return new PdfBoxSignatureDrawerFactory() {
             @Override
             public SignatureDrawer getSignatureDrawer(SignatureImageParameters imageParameters) {
                 return new NativePdfBoxVisibleSignatureTableDrawer();
             }
-        });
+        };
     }
 }
@@ -0,0 +1,111 @@
+package org.openpdfsign;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for the server and for network-bound work, on virtual threads (Java 21 and later).
+ * Selected by the multi-release jar instead of the platform thread version in src/main/java.
+ */
+public class Threads {
+    //signing jobs spend most of their time waiting for TSA and OCSP responses, which costs no CPU on a virtual thread
+    private static final int JOBS_PER_CPU = 4;
+
+    public static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Default number of concurrent signing jobs of the server: several per CPU, as waiting jobs do not take a CPU
+     */
+    public static int defaultConcurrency() {
+        return Runtime.getRuntime().availableProcessors() * JOBS_PER_CPU;
+    }
+
+    /**
+     * Thread pool for Jetty's connectors and handlers, one virtual thread per task
+     */
+    public static ThreadPool newServerThreadPool() {
+        return new VirtualThreadPool();
+    }
+
+    /**
+     * Executor for up to the given number of concurrent tasks, which are mostly blocked on network I/O.
+     * The number of concurrent tasks is limited by the caller, every task gets its own virtual thread.
+     */
+    public static ExecutorService newWorkerExecutor(String name, int threads) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    /**
+     * Executor for an unbounded number of short, network-bound tasks
+     */
+    public static ExecutorService newBlockingExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    /**
+     * Jetty thread pool running every task on a new virtual thread.
+     * Virtual threads do not keep the JVM alive, so a platform thread waits while the pool is started.
+     */
+    static class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+        private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jetty-", 1).factory());
+        private final AtomicInteger active = new AtomicInteger();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        @Override
+        protected void doStart() {
+            Thread keepAlive = new Thread(() -> {
+                try {
+                    stopped.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "jetty-keepalive");
+            keepAlive.start();
+        }
+
+        @Override
+        protected void doStop() {
+            executor.shutdown();
+            stopped.countDown();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            stopped.await();
+        }
+
+        @Override
+        public int getThreads() {
+            return active.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
+}
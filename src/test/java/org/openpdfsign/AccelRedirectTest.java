@@ -0,0 +1,41 @@
+package org.openpdfsign;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccelRedirectTest {
+
+    @Test
+    void testPublishAndCleanup(@TempDir Path tempDir) throws Exception {
+        AccelRedirect accel = new AccelRedirect(tempDir, "/_signed", 50);
+        Path file = accel.newFile();
+        assertEquals(tempDir, file.getParent());
+        Files.write(file, new byte[10]);
+
+        assertEquals("/_signed/" + file.getFileName(), accel.publish(file));
+        accel.cleanup();
+        assertTrue(Files.exists(file));
+
+        Thread.sleep(100);
+        accel.cleanup();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testOnlyPublishedFilesRemoved(@TempDir Path tempDir) throws Exception {
+        AccelRedirect accel = new AccelRedirect(tempDir, "/_signed", 50);
+        Path published = Files.write(accel.newFile(), new byte[10]);
+        Path other = Files.write(tempDir.resolve("other.pdf"), new byte[10]);
+        Path similar = Files.write(tempDir.resolve("open-pdf-sign-manual.pdf"), new byte[10]);
+
+        accel.removeAll();
+        assertFalse(Files.exists(published));
+        assertTrue(Files.exists(other));
+        assertTrue(Files.exists(similar));
+    }
+}
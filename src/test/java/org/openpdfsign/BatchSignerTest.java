@@ -0,0 +1,95 @@
+package org.openpdfsign;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSignerTest {
+
+    @Test
+    void testSignDirectory(@TempDir Path tempDir) throws Exception {
+        Configuration.getInstance(new Locale("en","AT"));
+        Path pubKey = Paths.get(getClass().getClassLoader().getResource("cert.pem").toURI());
+        Path privKey = Paths.get(getClass().getClassLoader().getResource("key_nopass.pem").toURI());
+        Path demoPdf = Paths.get(getClass().getClassLoader().getResource("demo.pdf").toURI());
+
+        Path input = tempDir.resolve("in");
+        Files.createDirectories(input.resolve("sub"));
+        Files.copy(demoPdf, input.resolve("a.pdf"));
+        Files.copy(demoPdf, input.resolve("sub").resolve("b.pdf"));
+        Files.write(input.resolve("broken.pdf"), "no pdf".getBytes(StandardCharsets.UTF_8));
+        Files.write(input.resolve("ignored.txt"), "no pdf".getBytes(StandardCharsets.UTF_8));
+
+        CommandLineArguments cla = new CommandLineArguments();
+        cla.setInputDirectory(input.toString());
+        List<BatchSigner.BatchInput> inputs = BatchSigner.collectInputs(cla);
+        assertEquals(3, inputs.size());
+
+        SigningSession session = new Signer().newSession(KeyStoreLoader.loadKeyEntryFromKeys(pubKey, privKey, null), cla);
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        Path output = tempDir.resolve("out");
+        int failed = new BatchSigner(session, 2).signAll(inputs, output, results);
+
+        assertEquals(1, failed);
+        assertTrue(Files.size(output.resolve("a.pdf")) > Files.size(demoPdf));
+        assertTrue(Files.size(output.resolve("sub").resolve("b.pdf")) > Files.size(demoPdf));
+
+        String[] lines = new String(results.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        int ok = 0;
+        for (String line : lines) {
+            JsonNode result = mapper.readTree(line);
+            if ("ok".equals(result.get("status").asText())) {
+                ok++;
+            } else {
+                assertTrue(result.get("input").asText().endsWith("broken.pdf"));
+            }
+        }
+        assertEquals(2, ok);
+    }
+
+    @Test
+    void testManifestInputs(@TempDir Path tempDir) throws Exception {
+        Path a = Files.createDirectories(tempDir.resolve("a")).resolve("invoice.pdf");
+        Path b = Files.createDirectories(tempDir.resolve("b")).resolve("invoice.pdf");
+        Files.write(a, new byte[1]);
+        Files.write(b, new byte[1]);
+
+        CommandLineArguments cla = new CommandLineArguments();
+        cla.setInputDirectory(tempDir.resolve("a").toString());
+        cla.setInputList(Files.write(tempDir.resolve("manifest.txt"), (a + "\n" + a.getParent().resolve("../a/invoice.pdf") + "\n")
+                .getBytes(StandardCharsets.UTF_8)).toString());
+        //the same file from directory and manifest, twice from the manifest
+        List<BatchSigner.BatchInput> inputs = BatchSigner.collectInputs(cla);
+        assertEquals(1, inputs.size());
+
+        //different files for the same output file
+        cla.setInputList(Files.write(tempDir.resolve("manifest.txt"), (a + "\n" + b + "\n")
+                .getBytes(StandardCharsets.UTF_8)).toString());
+        assertThrows(IOException.class, () -> BatchSigner.collectInputs(cla));
+
+        assertEquals(Paths.get("a", "invoice.pdf"), BatchSigner.manifestRelativePath(Paths.get("./a/invoice.pdf")));
+        assertEquals(Paths.get("invoice.pdf"), BatchSigner.manifestRelativePath(Paths.get("../b/invoice.pdf")));
+        assertEquals(Paths.get("invoice.pdf"), BatchSigner.manifestRelativePath(b));
+    }
+
+    @Test
+    void testGlobBase() {
+        assertEquals(Paths.get("docs"), BatchSigner.globBase("docs/**/*.pdf"));
+        assertEquals(Paths.get("/data/in"), BatchSigner.globBase("/data/in/*.pdf"));
+        assertEquals(Paths.get("."), BatchSigner.globBase("*.pdf"));
+    }
+}
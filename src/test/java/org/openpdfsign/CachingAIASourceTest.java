@@ -0,0 +1,45 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.aia.AIASource;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingAIASourceTest {
+
+    @Test
+    void testIssuerLookupIsLocal() throws Exception {
+        CertificateToken certificate = KeyStoreLoader.loadKeyEntryFromKeys(
+                resource("cert.pem"), resource("key_nopass.pem"), null).getCertificate();
+        AtomicInteger requests = new AtomicInteger();
+        AIASource online = (AIASource) token -> {
+            requests.incrementAndGet();
+            return Collections.singleton(certificate);
+        };
+
+        CachingAIASource source = new CachingAIASource(online);
+        assertEquals("2a603c868577a6cdb71ad2af1164cb645859729b", CachingAIASource.subjectKeyIdentifier(certificate));
+        assertEquals(CachingAIASource.subjectKeyIdentifier(certificate), CachingAIASource.authorityKeyIdentifier(certificate));
+
+        //first lookup goes online, afterwards the issuer is found by its key identifier
+        assertTrue(source.getCertificatesByAIA(certificate).contains(certificate));
+        assertTrue(source.getCertificatesByAIA(certificate).contains(certificate));
+        assertEquals(1, requests.get());
+
+        //self-signed chain is complete already
+        List<CertificateToken> chain = source.completeChain(Collections.singletonList(certificate));
+        assertEquals(1, chain.size());
+        assertEquals(1, requests.get());
+    }
+
+    private Path resource(String name) throws Exception {
+        return Paths.get(getClass().getClassLoader().getResource(name).toURI());
+    }
+}
@@ -0,0 +1,59 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPSource;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPToken;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openpdfsign.OcspFixtures.loadKey;
+import static org.openpdfsign.OcspFixtures.response;
+
+class CachingOCSPSourceTest {
+
+    @Test
+    void testMemoryAndDiskCache(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = loadKey();
+        CertificateToken certificate = key.getCertificate();
+        AtomicInteger requests = new AtomicInteger();
+        OCSPSource online = (OCSPSource) (cert, issuer) -> {
+            requests.incrementAndGet();
+            return response(key, new Date(System.currentTimeMillis() + 3600 * 1000));
+        };
+
+        CachingOCSPSource source = new CachingOCSPSource(online, tempDir, 3600 * 1000);
+        OCSPToken token = source.getRevocationToken(certificate, certificate);
+        assertNotNull(token);
+        assertSame(token, source.getRevocationToken(certificate, certificate));
+        assertEquals(1, requests.get());
+
+        //new instance, e.g. after restart: loaded from disk
+        CachingOCSPSource restarted = new CachingOCSPSource(online, tempDir, 3600 * 1000);
+        OCSPToken loaded = restarted.getRevocationToken(certificate, certificate);
+        assertEquals(1, requests.get());
+        assertArrayEquals(token.getEncoded(), loaded.getEncoded());
+    }
+
+    @Test
+    void testExpiredResponseIsRefreshed(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = loadKey();
+        CertificateToken certificate = key.getCertificate();
+        AtomicInteger requests = new AtomicInteger();
+        OCSPSource online = (OCSPSource) (cert, issuer) -> {
+            requests.incrementAndGet();
+            //nextUpdate within the expiry margin
+            return response(key, new Date(System.currentTimeMillis() + 1000));
+        };
+
+        CachingOCSPSource source = new CachingOCSPSource(online, tempDir, 3600 * 1000);
+        source.getRevocationToken(certificate, certificate);
+        source.getRevocationToken(certificate, certificate);
+        assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,152 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.enumerations.CertificateStatus;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLToken;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrlStoreTest {
+    private static final String URL = "http://crl.example.org/test.crl";
+
+    @Test
+    void testStoredTokens(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = issuerKey();
+        CertificateToken issuer = key.getCertificate();
+        byte[] crl = crl(key, new Date());
+
+        CrlStore store = new CrlStore(tempDir, 24 * 3600 * 1000);
+        CrlStore.StoredCrl stored = store.store(URL, issuer, crl);
+        CRLToken revoked = stored.getToken(certificate(key, BigInteger.valueOf(14)));
+        assertEquals(CertificateStatus.REVOKED, revoked.getStatus());
+        CertificateToken good = certificate(key, BigInteger.valueOf(8));
+        CRLToken token = stored.getToken(good);
+        assertEquals(CertificateStatus.GOOD, token.getStatus());
+        assertSame(token, stored.getToken(good));
+        //the exact downloaded CRL is embedded
+        assertArrayEquals(crl, token.getEncoded());
+
+        //after restart, the stored CRL is used without downloading
+        CrlStore restarted = new CrlStore(tempDir, 24 * 3600 * 1000);
+        CrlStore.StoredCrl loaded = restarted.get(URL, issuer);
+        assertEquals(stored.getThisUpdate(), loaded.getThisUpdate());
+        assertEquals(CertificateStatus.REVOKED, loaded.getToken(certificate(key, BigInteger.valueOf(7000))).getStatus());
+        assertEquals(CertificateStatus.GOOD, loaded.getToken(certificate(key, BigInteger.valueOf(7001))).getStatus());
+    }
+
+    @Test
+    void testForeignCrlRejected(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = issuerKey();
+        byte[] crl = crl(key, new Date());
+        crl[crl.length - 1] ^= 1;
+
+        CrlStore store = new CrlStore(tempDir, 24 * 3600 * 1000);
+        assertThrows(IOException.class, () -> store.store(URL, key.getCertificate(), crl));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testDownloadsPerUrl(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = issuerKey();
+        byte[] crl = crl(key, new Date());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger downloads = new AtomicInteger();
+        Server server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                downloads.incrementAndGet();
+                if (target.startsWith("/slow")) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                response.setContentLength(crl.length);
+                response.getOutputStream().write(crl);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            String url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            CrlStore store = new CrlStore(tempDir, 24 * 3600 * 1000);
+            Future<CrlStore.StoredCrl> slow = executor.submit(() -> store.get(url + "/slow.crl", key.getCertificate()));
+            Future<CrlStore.StoredCrl> waiting = executor.submit(() -> store.get(url + "/slow.crl", key.getCertificate()));
+            //a slow download does not hold up other URLs
+            assertNotNull(store.get(url + "/fast.crl", key.getCertificate()));
+            assertFalse(slow.isDone());
+            release.countDown();
+            assertSame(slow.get(10, TimeUnit.SECONDS), waiting.get(10, TimeUnit.SECONDS));
+            //concurrent callers for the same URL share one download
+            assertEquals(2, downloads.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            server.stop();
+        }
+    }
+
+    private KSPrivateKeyEntry issuerKey() throws Exception {
+        Path pubKey = Paths.get(getClass().getClassLoader().getResource("cert.pem").toURI());
+        Path privKey = Paths.get(getClass().getClassLoader().getResource("key_nopass.pem").toURI());
+        return KeyStoreLoader.loadKeyEntryFromKeys(pubKey, privKey, null);
+    }
+
+    private static byte[] crl(KSPrivateKeyEntry key, Date now) throws Exception {
+        X509CertificateHolder issuerHolder = new X509CertificateHolder(key.getCertificate().getEncoded());
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(issuerHolder.getSubject(), now);
+        builder.setNextUpdate(new Date(now.getTime() + 24 * 3600 * 1000));
+        for (int i = 1; i <= 1000; i++) {
+            builder.addCRLEntry(BigInteger.valueOf(i * 7L), now, i % 2 == 0 ? CRLReason.keyCompromise : CRLReason.superseded);
+        }
+        X509CRLHolder crl = builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key.getPrivateKey()));
+        return crl.getEncoded();
+    }
+
+    private static CertificateToken certificate(KSPrivateKeyEntry key, BigInteger serialNumber) throws Exception {
+        X509CertificateHolder issuerHolder = new X509CertificateHolder(key.getCertificate().getEncoded());
+        Date now = new Date();
+        X509v3CertificateBuilder builder = new X509v3CertificateBuilder(issuerHolder.getSubject(), serialNumber, now,
+                new Date(now.getTime() + 24 * 3600 * 1000), new X500Name("CN=Test " + serialNumber),
+                SubjectPublicKeyInfo.getInstance(key.getCertificate().getPublicKey().getEncoded()));
+        X509CertificateHolder holder = builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key.getPrivateKey()));
+        return new CertificateToken(new JcaX509CertificateConverter().getCertificate(holder));
+    }
+}
@@ -0,0 +1,53 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentSpoolTest {
+
+    @Test
+    void testSmallDocumentInMemory(@TempDir Path tempDir) throws Exception {
+        byte[] data = data(1000);
+        try (DocumentSpool spool = DocumentSpool.spool(new ByteArrayInputStream(data), 4096, 0, tempDir)) {
+            assertTrue(spool.getDocument() instanceof InMemoryDocument);
+            assertNull(spool.getFile());
+            assertEquals(1000, spool.getSize());
+            assertArrayEquals(data, ((InMemoryDocument) spool.getDocument()).getBytes());
+        }
+    }
+
+    @Test
+    void testLargeDocumentSpooled(@TempDir Path tempDir) throws Exception {
+        byte[] data = data(300 * 1024);
+        Path file;
+        try (DocumentSpool spool = DocumentSpool.spool(new ByteArrayInputStream(data), 4096, 0, tempDir)) {
+            assertTrue(spool.getDocument() instanceof FileDocument);
+            file = spool.getFile();
+            assertArrayEquals(data, Files.readAllBytes(file));
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testMaxSize(@TempDir Path tempDir) throws Exception {
+        assertThrows(DocumentSpool.DocumentTooLargeException.class,
+                () -> DocumentSpool.spool(new ByteArrayInputStream(data(300 * 1024)), 4096, 200 * 1024, tempDir));
+        //the partially spooled file is removed
+        assertEquals(0, Files.list(tempDir).count());
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,91 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.TimestampBinary;
+import eu.europa.esig.dss.spi.x509.tsp.TSPSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedTSPSourceTest {
+
+    @Test
+    void testSlowSourceIsHedged() {
+        LinkedHashMap<String, TSPSource> sources = new LinkedHashMap<>();
+        sources.put("slow", source(5000, new byte[]{1}));
+        sources.put("fast", source(0, new byte[]{2}));
+        HedgedTSPSource tspSource = new HedgedTSPSource(sources, 50, null, new TsaRegistry(5, 30000));
+
+        long start = System.currentTimeMillis();
+        TimestampBinary timestamp = tspSource.getTimeStampResponse(DigestAlgorithm.SHA256, new byte[32]);
+        assertArrayEquals(new byte[]{2}, timestamp.getBytes());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    void testFailingSourceFallsBackWithoutDelay() {
+        LinkedHashMap<String, TSPSource> sources = new LinkedHashMap<>();
+        sources.put("failing", source(0, null));
+        sources.put("second", source(0, new byte[]{2}));
+        HedgedTSPSource tspSource = new HedgedTSPSource(sources, 5000, null, new TsaRegistry(5, 30000));
+
+        long start = System.currentTimeMillis();
+        assertArrayEquals(new byte[]{2}, tspSource.getTimeStampResponse(DigestAlgorithm.SHA256, new byte[32]).getBytes());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    void testAllSourcesFail() {
+        LinkedHashMap<String, TSPSource> sources = new LinkedHashMap<>();
+        sources.put("first", source(0, null));
+        sources.put("second", source(0, null));
+        HedgedTSPSource tspSource = new HedgedTSPSource(sources, 50, null, new TsaRegistry(5, 30000));
+        assertThrows(DSSException.class, () -> tspSource.getTimeStampResponse(DigestAlgorithm.SHA256, new byte[32]));
+    }
+
+    @Test
+    void testAllCircuitsOpen() {
+        TsaRegistry registry = new TsaRegistry(1, 60000);
+        registry.recordFailure("first");
+        registry.recordFailure("second");
+        LinkedHashMap<String, TSPSource> sources = new LinkedHashMap<>();
+        sources.put("first", source(0, null));
+        sources.put("second", source(0, new byte[]{2}));
+        HedgedTSPSource tspSource = new HedgedTSPSource(sources, 50, null, registry);
+
+        //the sources are probed despite their open circuits, the recovered one is used again
+        assertArrayEquals(new byte[]{2}, tspSource.getTimeStampResponse(DigestAlgorithm.SHA256, new byte[32]).getBytes());
+        long now = System.currentTimeMillis();
+        assertEquals(TsaRegistry.State.CLOSED, registry.get("second").getState(now));
+        assertEquals(TsaRegistry.State.OPEN, registry.get("first").getState(now));
+    }
+
+    @Test
+    void testPercentileDelay() {
+        LinkedHashMap<String, TSPSource> sources = new LinkedHashMap<>();
+        sources.put("only", source(0, new byte[]{1}));
+        HedgedTSPSource tspSource = new HedgedTSPSource(sources, 1234, 95d, new TsaRegistry(5, 30000));
+        assertEquals(1234, tspSource.hedgeDelay("only"));
+        for (int i = 0; i < 30; i++) {
+            tspSource.getTimeStampResponse(DigestAlgorithm.SHA256, new byte[32]);
+        }
+        assertTrue(tspSource.hedgeDelay("only") < 1234);
+    }
+
+    private static TSPSource source(long delayMillis, byte[] response) {
+        return (TSPSource) (digestAlgorithm, digest) -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new DSSException("cancelled");
+            }
+            if (response == null) {
+                throw new DSSException("unavailable");
+            }
+            return new TimestampBinary(response);
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package org.openpdfsign;
 
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.pkcs.PKCSException;
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -70,4 +73,36 @@ class KeyStoreLoaderTest {
         assertNotNull(pkcs12.getKey("alias", keyStorePassword));
         assertNotNull(keyStore);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLoadKeyEntryFromPemKeys() throws URISyntaxException, CertificateException, IOException, OperatorCreationException, PKCSException, KeyStoreLoader.KeyIsNeededException {
+        URL pubKey = getClass().getClassLoader().getResource("cert.pem");
+        URL privKey = getClass().getClassLoader().getResource("key.pem");
+
+        KSPrivateKeyEntry keyEntry = KeyStoreLoader.loadKeyEntryFromKeys(Paths.get(pubKey.toURI()), Paths.get(privKey.toURI()), privateKeyPassword);
+        assertNotNull(keyEntry.getPrivateKey());
+        assertNotNull(keyEntry.getCertificate());
+        assertEquals("alias", keyEntry.getAlias());
+    }
+
+    @Test
+    void testLoadKeyEntryFromPkcs12() throws Exception {
+        URL pubKey = getClass().getClassLoader().getResource("cert.pem");
+        URL privKey = getClass().getClassLoader().getResource("key.pem");
+
+        byte[] keyStore = KeyStoreLoader.loadKeyStoreFromKeys(Paths.get(pubKey.toURI()), Paths.get(privKey.toURI()), privateKeyPassword, keyStorePassword);
+        Path p12 = Files.createTempFile("openpdfsign", ".p12");
+        try {
+            Files.write(p12, keyStore);
+            KSPrivateKeyEntry keyEntry = KeyStoreLoader.loadKeyEntryFromKeystore(p12, keyStorePassword);
+            assertNotNull(keyEntry.getPrivateKey());
+            assertNotNull(keyEntry.getCertificate());
+
+            assertThrows(KeyStoreLoader.KeyIsNeededException.class, () -> {
+                KeyStoreLoader.loadKeyEntryFromKeystore(p12, "wrong".toCharArray());
+            });
+        } finally {
+            Files.delete(p12);
+        }
+    }
+}
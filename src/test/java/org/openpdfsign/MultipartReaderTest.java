@@ -0,0 +1,104 @@
+package org.openpdfsign;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartReaderTest {
+
+    @Test
+    void testParts() throws Exception {
+        //second part contains a line break followed by a prefix of the delimiter
+        String body = "preamble\r\n" +
+                "--sep\r\n" +
+                "Content-Type: application/pdf\r\n" +
+                "Content-Disposition: attachment; filename=\"dir/a.pdf\"\r\n" +
+                "Content-ID: <a>\r\n" +
+                "\r\n" +
+                "first\r\n" +
+                "--sep\r\n" +
+                "Content-Type: application/pdf\r\n" +
+                "\r\n" +
+                "second\r\n--se\r\n-\r\n" +
+                "--sep--\r\n" +
+                "epilogue";
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.US_ASCII)), "sep");
+
+        MultipartReader.Part first = reader.nextPart();
+        assertEquals("a.pdf", first.getFilename());
+        assertEquals("<a>", first.getHeader("content-id"));
+        assertEquals("first", IOUtils.toString(first.getBody(), StandardCharsets.US_ASCII));
+
+        MultipartReader.Part second = reader.nextPart();
+        assertNull(second.getFilename());
+        assertEquals("second\r\n--se\r\n-", IOUtils.toString(second.getBody(), StandardCharsets.US_ASCII));
+
+        assertNull(reader.nextPart());
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    void testUnreadPartIsSkipped() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("--sep\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        body.write(new byte[100000]);
+        body.write("\r\n--sep\r\n\r\nlast\r\n--sep--".getBytes(StandardCharsets.US_ASCII));
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body.toByteArray()), "sep");
+
+        assertNotNull(reader.nextPart());
+        assertEquals("last", IOUtils.toString(reader.nextPart().getBody(), StandardCharsets.US_ASCII));
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    void testReadsAcrossChunks() throws Exception {
+        //content full of delimiter prefixes (without the last byte of the delimiter), arriving a few bytes at a time
+        //and read with small buffers
+        Random random = new Random(42);
+        byte[] content = new byte[50000];
+        byte[] prefix = "\r\n--se".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = random.nextInt(4) == 0 ? prefix[random.nextInt(prefix.length)] : (byte) random.nextInt(256);
+            if (content[i] == 'p') {
+                content[i] = 'q';
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("--sep\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        body.write(content);
+        body.write("\r\n--sep--".getBytes(StandardCharsets.US_ASCII));
+        InputStream chunked = new FilterInputStream(new ByteArrayInputStream(body.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(7)));
+            }
+        };
+        MultipartReader reader = new MultipartReader(chunked, "sep");
+
+        InputStream part = reader.nextPart().getBody();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int n;
+        while ((n = part.read(buffer, 0, 1 + random.nextInt(buffer.length))) != -1) {
+            read.write(buffer, 0, n);
+        }
+        assertArrayEquals(content, read.toByteArray());
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    void testBoundary() {
+        assertEquals("abc", MultipartReader.boundary("multipart/mixed; boundary=abc"));
+        assertEquals("a b", MultipartReader.boundary("multipart/mixed; charset=utf-8; boundary=\"a b\""));
+        assertNull(MultipartReader.boundary("multipart/mixed"));
+    }
+}
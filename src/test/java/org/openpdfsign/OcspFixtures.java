@@ -0,0 +1,56 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.DSSRevocationUtils;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPToken;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+
+/**
+ * Test key and OCSP responses for the OCSP cache and prefetch tests
+ */
+final class OcspFixtures {
+
+    private OcspFixtures() {
+    }
+
+    /**
+     * The self-signed test key, which is its own issuer and OCSP responder
+     */
+    static KSPrivateKeyEntry loadKey() throws Exception {
+        Path pubKey = Paths.get(OcspFixtures.class.getClassLoader().getResource("cert.pem").toURI());
+        Path privKey = Paths.get(OcspFixtures.class.getClassLoader().getResource("key_nopass.pem").toURI());
+        return KeyStoreLoader.loadKeyEntryFromKeys(pubKey, privKey, null);
+    }
+
+    /**
+     * A GOOD response for the key's certificate, signed by the key
+     */
+    static OCSPToken response(KSPrivateKeyEntry key, Date nextUpdate) {
+        try {
+            CertificateToken certificate = key.getCertificate();
+            X509CertificateHolder issuer = new X509CertificateHolder(certificate.getEncoded());
+            CertificateID certificateId = new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                    issuer, certificate.getSerialNumber());
+            BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(issuer.getSubject()));
+            builder.addResponse(certificateId, CertificateStatus.GOOD, new Date(), nextUpdate);
+            BasicOCSPResp basicResponse = builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key.getPrivateKey()),
+                    new X509CertificateHolder[]{issuer}, new Date());
+            return new OCSPToken(basicResponse, DSSRevocationUtils.getLatestSingleResponse(basicResponse, certificate, certificate),
+                    certificate, certificate);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.service.http.proxy.ProxyConfig;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledDataLoaderTest {
+
+    @Test
+    void testConnectionReused() throws Exception {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        AtomicInteger opened = new AtomicInteger();
+        connector.addBean(new Connection.Listener() {
+            @Override
+            public void onOpened(Connection connection) {
+                opened.incrementAndGet();
+            }
+
+            @Override
+            public void onClosed(Connection connection) {
+            }
+        });
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                byte[] body = target.getBytes(StandardCharsets.UTF_8);
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        try {
+            String url = "http://localhost:" + connector.getLocalPort();
+            //two loaders, one pool
+            assertArrayEquals("/a.crl".getBytes(StandardCharsets.UTF_8), PooledDataLoader.forDownloads().get(url + "/a.crl"));
+            assertArrayEquals("/ocsp".getBytes(StandardCharsets.UTF_8), PooledDataLoader.forOcsp().post(url + "/ocsp", new byte[]{1}));
+            assertEquals(1, opened.get());
+            assertFalse(PooledDataLoader.poolStats().isEmpty());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testProxyConfig() {
+        System.setProperty("https.proxyHost", "proxy.example.org");
+        System.setProperty("https.proxyPort", "3128");
+        try {
+            ProxyConfig proxyConfig = PooledDataLoader.retrieveProxyConfig();
+            assertEquals("proxy.example.org", proxyConfig.getHttpsProperties().getHost());
+            assertEquals(3128, proxyConfig.getHttpsProperties().getPort());
+            assertNull(proxyConfig.getHttpProperties());
+        } finally {
+            System.clearProperty("https.proxyHost");
+            System.clearProperty("https.proxyPort");
+        }
+    }
+}
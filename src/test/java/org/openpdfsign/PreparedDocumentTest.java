@@ -0,0 +1,52 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparedDocumentTest {
+
+    @Test
+    void testAddPageAndLastPage() throws Exception {
+        DSSDocument document = demoDocument();
+        int originalPageCount = countPages(document);
+
+        SignatureParameters params = new SignatureParameters();
+        params.setPage(-1);
+        params.setAddPage(true);
+        PreparedDocument prepared = PreparedDocument.prepare(document, params);
+
+        assertEquals(originalPageCount + 1, prepared.getPageCount());
+        assertEquals(originalPageCount + 1, prepared.getSignaturePage());
+        assertEquals(originalPageCount + 1, countPages(prepared.getDocument()));
+    }
+
+    @Test
+    void testPositivePageIsNotParsed() throws Exception {
+        DSSDocument document = demoDocument();
+
+        SignatureParameters params = new SignatureParameters();
+        params.setPage(1);
+        PreparedDocument prepared = PreparedDocument.prepare(document, params);
+
+        assertSame(document, prepared.getDocument());
+        assertEquals(1, prepared.getSignaturePage());
+    }
+
+    private DSSDocument demoDocument() throws URISyntaxException {
+        return new FileDocument(new File(getClass().getClassLoader().getResource("demo.pdf").toURI()));
+    }
+
+    private int countPages(DSSDocument document) throws Exception {
+        try (InputStream is = document.openStream(); PDDocument pdDocument = PDDocument.load(is)) {
+            return pdDocument.getNumberOfPages();
+        }
+    }
+}
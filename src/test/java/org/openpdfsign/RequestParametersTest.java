@@ -0,0 +1,92 @@
+package org.openpdfsign;
+
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestParametersTest {
+
+    @Test
+    void testOverrides() {
+        CommandLineArguments defaults = new CommandLineArguments();
+        defaults.setInputFile("input.pdf");
+        defaults.setImageFile("signature.png");
+        defaults.setReason("default reason");
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("page", "-1");
+        overrides.put("signature-reason", "Invoice");
+        overrides.put("no-hint", "true");
+        overrides.put("certification", "not-certified");
+        SignatureParameters params = RequestParameters.apply(defaults, overrides);
+
+        assertEquals(-1, params.getPage());
+        assertEquals("Invoice", params.getReason());
+        assertTrue(params.getNoHint());
+        assertEquals(SignatureParameters.CertificationMode.NOT_CERTIFIED, params.getCertification());
+        //not overridden: as configured
+        assertEquals("signature.png", params.getImageFile());
+        assertEquals(10, params.getWidth());
+        //defaults are not changed
+        assertEquals("default reason", defaults.getReason());
+        assertNull(defaults.getPage());
+    }
+
+    @Test
+    void testPerDocumentAndPerSession() {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("page", "-1");
+        overrides.put("signature-reason", "Invoice");
+        overrides.put("no-hint", "true");
+
+        assertEquals(Collections.singletonMap("no-hint", "true"), RequestParameters.perSession(overrides));
+        Map<String, String> perDocument = RequestParameters.perDocument(overrides);
+        assertEquals(2, perDocument.size());
+        assertEquals("Invoice", perDocument.get("signature-reason"));
+        assertEquals(3, overrides.size());
+    }
+
+    @Test
+    void testPassphraseOnlyAsHeader() {
+        Map<String, String> query = new HashMap<>();
+        query.put("pdf-passphrase", "from-url");
+        query.put("page", "-1");
+        Map<String, String> headers = new HashMap<>();
+        HttpServletRequest req = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getParameter":
+                            return query.get(args[0]);
+                        case "getHeader":
+                            return headers.get(args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        assertEquals(Collections.singletonMap("page", "-1"), RequestParameters.fromRequest(req));
+        headers.put(RequestParameters.HEADER_PREFIX + "pdf-passphrase", "secret");
+        assertEquals("secret", RequestParameters.fromRequest(req).get("pdf-passphrase"));
+    }
+
+    @Test
+    void testDisallowedAndInvalid() {
+        SignatureParameters defaults = new SignatureParameters();
+        assertThrows(IllegalArgumentException.class,
+                () -> RequestParameters.apply(defaults, Collections.singletonMap("image", "/etc/passwd")));
+        assertThrows(IllegalArgumentException.class,
+                () -> RequestParameters.apply(defaults, Collections.singletonMap("page", "last")));
+        assertThrows(IllegalArgumentException.class,
+                () -> RequestParameters.apply(defaults, Collections.singletonMap("certification", "unknown")));
+        assertThrows(IllegalArgumentException.class,
+                () -> RequestParameters.apply(defaults, Collections.singletonMap("timezone", "Mars/Olympus_Mons")));
+        assertEquals("Europe/Vienna",
+                RequestParameters.apply(defaults, Collections.singletonMap("timezone", "Europe/Vienna")).getTimezone());
+    }
+}
@@ -0,0 +1,72 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.revocation.crl.CRLSource;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPSource;
+import eu.europa.esig.dss.spi.x509.revocation.ocsp.OCSPToken;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openpdfsign.OcspFixtures.loadKey;
+import static org.openpdfsign.OcspFixtures.response;
+
+class RevocationPrefetcherTest {
+    private static final long HOUR = 3600 * 1000;
+
+    @Test
+    void testRefreshAheadOfExpiry(@TempDir Path tempDir) throws Exception {
+        KSPrivateKeyEntry key = loadKey();
+        CertificateToken certificate = key.getCertificate();
+        AtomicInteger requests = new AtomicInteger();
+        OCSPSource online = (OCSPSource) (cert, issuer) -> {
+            requests.incrementAndGet();
+            return response(key, new Date(System.currentTimeMillis() + HOUR));
+        };
+        CachingOCSPSource ocspSource = new CachingOCSPSource(online, tempDir, HOUR);
+        RevocationPrefetcher prefetcher = new RevocationPrefetcher(ocspSource, (CRLSource) (cert, issuer) -> null, 10 * 60 * 1000);
+
+        long next = prefetcher.refresh(certificate, certificate);
+        assertEquals(1, requests.get());
+        OCSPToken cached = ocspSource.getCachedToken(certificate, certificate);
+        assertNotNull(cached);
+        //ten minutes before the response is no longer used
+        assertEquals(ocspSource.getExpiry(cached).getTime() - 10 * 60 * 1000, next);
+
+        //signing requests are served from the cache
+        assertSame(cached, ocspSource.getRevocationToken(certificate, certificate));
+        assertEquals(1, requests.get());
+
+        //after a restart, the response on disk is used until it is due
+        CachingOCSPSource restarted = new CachingOCSPSource(online, tempDir, HOUR);
+        RevocationPrefetcher restartedPrefetcher = new RevocationPrefetcher(restarted, (CRLSource) (cert, issuer) -> null, 10 * 60 * 1000);
+        assertEquals(next, restartedPrefetcher.initialRefresh(certificate, certificate));
+        assertEquals(1, requests.get());
+
+        Map<?, ?> status = (Map<?, ?>) prefetcher.snapshot().get(certificate.getSubject().getPrettyPrintRFC2253());
+        assertEquals("ok", status.get("outcome"));
+        assertEquals("ocsp", status.get("source"));
+        assertNotNull(status.get("ageSeconds"));
+    }
+
+    @Test
+    void testFailureIsRetried(@TempDir Path tempDir) throws Exception {
+        CertificateToken certificate = loadKey().getCertificate();
+        CachingOCSPSource ocspSource = new CachingOCSPSource((OCSPSource) (cert, issuer) -> null, tempDir, HOUR);
+        RevocationPrefetcher prefetcher = new RevocationPrefetcher(ocspSource, (CRLSource) (cert, issuer) -> null, 10 * 60 * 1000);
+
+        long before = System.currentTimeMillis();
+        long next = prefetcher.refresh(certificate, certificate);
+        assertTrue(next >= before + 60 * 1000 && next <= System.currentTimeMillis() + 60 * 1000);
+
+        Map<?, ?> status = (Map<?, ?>) prefetcher.snapshot().get(certificate.getSubject().getPrettyPrintRFC2253());
+        assertEquals("error", status.get("outcome"));
+        assertNotNull(status.get("error"));
+    }
+}
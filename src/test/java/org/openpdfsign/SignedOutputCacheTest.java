@@ -0,0 +1,164 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.InMemoryDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedOutputCacheTest {
+
+    @Test
+    void testPutAndOpen(@TempDir Path tempDir) throws Exception {
+        Path original = original(tempDir, "a.pdf", 100);
+        SignedOutputCache cache = new SignedOutputCache(tempDir.resolve("cache"), 1024 * 1024, 0);
+        cache.load();
+        String key = SignedOutputCache.key(original, "_", "session");
+
+        assertNull(cache.open(key));
+        put(cache, key, original, 50);
+        try (FileChannel cached = cache.open(key)) {
+            assertNotNull(cached);
+            assertArrayEquals(Files.readAllBytes(original), read(cached, 100));
+            assertEquals(150, cached.size());
+        }
+        assertEquals(1L, cache.snapshot().get("hits"));
+        assertEquals(1L, cache.snapshot().get("misses"));
+    }
+
+    @Test
+    void testLinkSurvivesEviction(@TempDir Path tempDir) throws Exception {
+        Path original = original(tempDir, "a.pdf", 100);
+        SignedOutputCache cache = new SignedOutputCache(tempDir.resolve("cache"), 150, 0);
+        cache.load();
+        String key = SignedOutputCache.key(original, "_", "session");
+        assertFalse(cache.link(key, tempDir.resolve("missing.pdf")));
+
+        put(cache, key, original, 20);
+        Path linked = tempDir.resolve("linked.pdf");
+        assertTrue(cache.link(key, linked));
+        Path other = original(tempDir, "b.pdf", 100);
+        put(cache, SignedOutputCache.key(other, "_", "session"), other, 20);
+        assertNull(cache.open(key));
+        assertEquals(120, Files.size(linked));
+    }
+
+    @Test
+    void testKeyChangesWithFile(@TempDir Path tempDir) throws Exception {
+        Path original = original(tempDir, "a.pdf", 100);
+        String key = SignedOutputCache.key(original, "_", "session");
+        assertEquals(key, SignedOutputCache.key(original, "_", "session"));
+        assertNotEquals(key, SignedOutputCache.key(original, "other", "session"));
+        assertNotEquals(key, SignedOutputCache.key(original, "_", "other session"));
+
+        Files.setLastModifiedTime(original, FileTime.fromMillis(Files.getLastModifiedTime(original).toMillis() + 5000));
+        assertNotEquals(key, SignedOutputCache.key(original, "_", "session"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEvicted(@TempDir Path tempDir) throws Exception {
+        SignedOutputCache cache = new SignedOutputCache(tempDir.resolve("cache"), 350, 0);
+        cache.load();
+        String[] keys = new String[3];
+        for (int i = 0; i < 3; i++) {
+            Path original = original(tempDir, i + ".pdf", 100);
+            keys[i] = SignedOutputCache.key(original, "_", "session");
+            put(cache, keys[i], original, 20);
+            if (i == 1) {
+                //first document used again, second is the least recently used
+                cache.open(keys[0]).close();
+            }
+        }
+        try (FileChannel first = cache.open(keys[0]); FileChannel second = cache.open(keys[1]); FileChannel third = cache.open(keys[2])) {
+            assertNotNull(first);
+            assertNull(second);
+            assertNotNull(third);
+        }
+        assertEquals(1L, cache.snapshot().get("evictions"));
+        assertEquals(240L, cache.snapshot().get("size"));
+    }
+
+    @Test
+    void testExpired(@TempDir Path tempDir) throws Exception {
+        Path original = original(tempDir, "a.pdf", 100);
+        SignedOutputCache cache = new SignedOutputCache(tempDir.resolve("cache"), 1024 * 1024, 50);
+        cache.load();
+        String key = SignedOutputCache.key(original, "_", "session");
+        put(cache, key, original, 10);
+        Thread.sleep(100);
+        assertNull(cache.open(key));
+        assertEquals(0, cache.snapshot().get("entries"));
+    }
+
+    @Test
+    void testLoadedFromDisk(@TempDir Path tempDir) throws Exception {
+        Path original = original(tempDir, "a.pdf", 100);
+        String key = SignedOutputCache.key(original, "_", "session");
+        SignedOutputCache cache = new SignedOutputCache(tempDir.resolve("cache"), 1024 * 1024, 0);
+        cache.load();
+        put(cache, key, original, 10);
+
+        SignedOutputCache restarted = new SignedOutputCache(tempDir.resolve("cache"), 1024 * 1024, 0);
+        restarted.load();
+        try (FileChannel cached = restarted.open(key)) {
+            assertNotNull(cached);
+            assertEquals(110, cached.size());
+        }
+    }
+
+    @Test
+    void testOtherFilesLeftAlone(@TempDir Path tempDir) throws Exception {
+        Path directory = Files.createDirectories(tempDir.resolve("cache"));
+        Path other = Files.write(directory.resolve("other.pdf"), new byte[10]);
+        Path otherTemporary = Files.write(directory.resolve("other.tmp"), new byte[10]);
+        Path interrupted = Files.write(directory.resolve("signed-" + String.join("", Collections.nCopies(64, "a")) + "." +
+                UUID.randomUUID() + ".tmp"), new byte[10]);
+        SignedOutputCache cache = new SignedOutputCache(directory, 1024 * 1024, 0);
+        cache.load();
+        assertEquals(0, cache.snapshot().get("entries"));
+        Path original = original(tempDir, "a.pdf", 100);
+        put(cache, SignedOutputCache.key(original, "_", "session"), original, 10);
+
+        SignedOutputCache restarted = new SignedOutputCache(directory, 1024 * 1024, 0);
+        restarted.load();
+        assertEquals(1, restarted.snapshot().get("entries"));
+        assertTrue(Files.exists(other));
+        assertTrue(Files.exists(otherTemporary));
+        assertFalse(Files.exists(interrupted));
+    }
+
+    private static Path original(Path directory, String name, int length) throws Exception {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (name.hashCode() + i);
+        }
+        return Files.write(directory.resolve(name), data);
+    }
+
+    private static void put(SignedOutputCache cache, String key, Path original, int appended) throws Exception {
+        try (SignedOutputWriter.Original pinned = SignedOutputWriter.pin(original)) {
+            cache.put(key, pinned, signed(original, appended));
+        }
+    }
+
+    private static InMemoryDocument signed(Path original, int appended) throws Exception {
+        byte[] content = Files.readAllBytes(original);
+        byte[] signed = new byte[content.length + appended];
+        System.arraycopy(content, 0, signed, 0, content.length);
+        return new InMemoryDocument(signed);
+    }
+
+    private static byte[] read(FileChannel channel, int length) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.read(buffer, 0);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,107 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.InMemoryDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedOutputWriterTest {
+    private static final byte[] ORIGINAL = "%PDF-1.4 original content %%EOF\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REVISION = "appended revision %%EOF\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void testWriteToFile(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+        Path output = tempDir.resolve("signed.pdf");
+
+        SignedOutputWriter.write(original, new InMemoryDocument(concat(ORIGINAL, REVISION)), output);
+        assertArrayEquals(concat(ORIGINAL, REVISION), Files.readAllBytes(output));
+    }
+
+    @Test
+    void testWriteToStream(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SignedOutputWriter.write(original, new InMemoryDocument(concat(ORIGINAL, REVISION)), out);
+        assertArrayEquals(concat(ORIGINAL, REVISION), out.toByteArray());
+    }
+
+    @Test
+    void testLargeOriginal(@TempDir Path tempDir) throws Exception {
+        byte[] content = new byte[300 * 1024];
+        new Random(1).nextBytes(content);
+        Path original = Files.write(tempDir.resolve("original.pdf"), content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SignedOutputWriter.write(original, new InMemoryDocument(concat(content, REVISION)), out);
+        assertArrayEquals(concat(content, REVISION), out.toByteArray());
+
+        //differs in the last window
+        byte[] rewritten = concat(content, REVISION);
+        rewritten[content.length - 10]++;
+        out.reset();
+        SignedOutputWriter.write(original, new InMemoryDocument(rewritten), out);
+        assertArrayEquals(rewritten, out.toByteArray());
+    }
+
+    @Test
+    void testOriginalIsNoPrefix(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+        byte[] rewritten = concat("%PDF-1.7 rewritten".getBytes(StandardCharsets.US_ASCII), REVISION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SignedOutputWriter.write(original, new InMemoryDocument(rewritten), out);
+        assertArrayEquals(rewritten, out.toByteArray());
+    }
+
+    @Test
+    void testSameEndNoPrefix(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+        //only the first byte differs
+        byte[] rewritten = concat(ORIGINAL, REVISION);
+        rewritten[0] = ' ';
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SignedOutputWriter.write(original, new InMemoryDocument(rewritten), out);
+        assertArrayEquals(rewritten, out.toByteArray());
+    }
+
+    @Test
+    void testOriginalChangedAfterSigning(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+        Path output = tempDir.resolve("signed.pdf");
+        try (SignedOutputWriter.Original pinned = SignedOutputWriter.pin(original)) {
+            byte[] signed = concat(ORIGINAL, REVISION);
+            //changed in place, the pinned channel sees the new content
+            byte[] changed = ORIGINAL.clone();
+            changed[0] = ' ';
+            Files.write(original, changed);
+
+            SignedOutputWriter.write(pinned, new InMemoryDocument(signed), output);
+            assertArrayEquals(signed, Files.readAllBytes(output));
+        }
+    }
+
+    @Test
+    void testWriteInPlace(@TempDir Path tempDir) throws Exception {
+        Path original = Files.write(tempDir.resolve("original.pdf"), ORIGINAL);
+
+        SignedOutputWriter.write(original, new InMemoryDocument(concat(ORIGINAL, REVISION)), original);
+        assertArrayEquals(concat(ORIGINAL, REVISION), Files.readAllBytes(original));
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
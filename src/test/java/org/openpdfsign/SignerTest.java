@@ -1,11 +1,19 @@
 package org.openpdfsign;
 
+import eu.europa.esig.dss.diagnostic.DiagnosticData;
+import eu.europa.esig.dss.diagnostic.SignatureWrapper;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.validation.SignedDocumentValidator;
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.pkcs.PKCSException;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -15,8 +23,16 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class SignerTest {
 
@@ -70,4 +86,50 @@ class SignerTest {
         signer.signPdf(Paths.get(demoPdf.toURI()), Paths.get("signed3s.pdf"),keyStore,keyStorePassword, null, params);
         System.out.println(2 + demoPdf.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSessionReuse() throws Exception {
+        URL pubKey = getClass().getClassLoader().getResource("cert.pem");
+        URL privKey = getClass().getClassLoader().getResource("key_nopass.pem");
+        Configuration.getInstance(new Locale("en","AT"));
+
+        final char[] keyStorePassword = "987654321".toCharArray();
+        byte[] keyStore = KeyStoreLoader.loadKeyStoreFromKeys(Paths.get(pubKey.toURI()), Paths.get(privKey.toURI()), null, keyStorePassword);
+
+        SignatureParameters params = new SignatureParameters();
+        params.setPage(1);
+        SigningSession session = new Signer().newSession(keyStore, keyStorePassword, params);
+
+        Path demoPdf = Paths.get(getClass().getClassLoader().getResource("demo.pdf").toURI());
+        byte[] original = Files.readAllBytes(demoPdf);
+        Date before = new Date(System.currentTimeMillis() - 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<DSSDocument>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> session.sign(new FileDocument(demoPdf.toFile()))));
+            }
+            for (Future<DSSDocument> result : results) {
+                DSSDocument signed = result.get();
+                try (InputStream is = signed.openStream()) {
+                    byte[] content = IOUtils.toByteArray(is);
+                    //incremental update of the original
+                    assertArrayEquals(original, Arrays.copyOf(content, original.length));
+                }
+
+                SignedDocumentValidator validator = SignedDocumentValidator.fromDocument(signed);
+                validator.setCertificateVerifier(new CommonCertificateVerifier());
+                DiagnosticData diagnosticData = validator.validateDocument().getDiagnosticData();
+                assertEquals(1, diagnosticData.getSignatures().size());
+                SignatureWrapper signature = diagnosticData.getSignatures().get(0);
+                assertTrue(signature.isSignatureIntact());
+                assertTrue(signature.isSignatureValid());
+                assertEquals(session.getPrivateKey().getCertificate().getDSSIdAsString(), signature.getSigningCertificate().getId());
+                assertFalse(signature.getClaimedSigningTime().before(before));
+                assertFalse(signature.getClaimedSigningTime().after(new Date()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.openpdfsign;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigningExecutorTest {
+
+    @Test
+    void testBoundedQueue() throws Exception {
+        SigningExecutor executor = new SigningExecutor(2, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(3);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        Runnable job = () -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            done.countDown();
+        };
+
+        //two running, one queued, the fourth is rejected
+        assertTrue(executor.submit(job));
+        assertTrue(executor.submit(job));
+        assertTrue(executor.admit());
+        assertTrue(executor.submit(job));
+        assertFalse(executor.admit());
+        assertFalse(executor.submit(job));
+        assertTrue(executor.getRetryAfterSeconds() >= 1);
+
+        //both slots taken before the jobs are let go
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, maxConcurrent.get());
+        assertEquals(2L, executor.snapshot().get("rejected"));
+    }
+
+    @Test
+    void testAdaptiveLimit() throws Exception {
+        SigningExecutor executor = new SigningExecutor(4, 10, 1);
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(executor.submit(() -> {
+                try {
+                    //above the latency target of 1 ms
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.currentLimit() < 4);
+        assertTrue(executor.currentLimit() >= 1);
+    }
+}
@@ -0,0 +1,90 @@
+package org.openpdfsign;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareResult() throws Exception {
+        SingleFlight<String, Result> flights = new SingleFlight<>();
+        SingleFlight<String, Result>.Call leader = flights.join("a");
+        SingleFlight<String, Result>.Call follower = flights.join("a");
+        SingleFlight<String, Result>.Call other = flights.join("b");
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+        assertTrue(other.isLeader());
+        assertFalse(follower.getResult().isDone());
+
+        Result result = new Result();
+        leader.complete(result);
+        assertSame(result, follower.getResult().get());
+        assertEquals(1L, flights.snapshot().get("coalesced"));
+        assertEquals(2L, flights.snapshot().get("started"));
+
+        //released once the last caller is done
+        leader.close();
+        assertEquals(0, result.closed.get());
+        follower.close();
+        follower.close();
+        assertEquals(1, result.closed.get());
+        other.fail(new IOException("failed"));
+        other.close();
+    }
+
+    @Test
+    void testNewFlightAfterCompletion() {
+        SingleFlight<String, Result> flights = new SingleFlight<>();
+        SingleFlight<String, Result>.Call first = flights.join("a");
+        first.complete(new Result());
+        SingleFlight<String, Result>.Call second = flights.join("a");
+        assertTrue(second.isLeader());
+        assertEquals(1, flights.snapshot().get("inFlight"));
+        first.close();
+        second.complete(new Result());
+        second.close();
+        assertEquals(0, flights.snapshot().get("inFlight"));
+    }
+
+    @Test
+    void testLeaderClosedWithoutResult() {
+        SingleFlight<String, Result> flights = new SingleFlight<>();
+        SingleFlight<String, Result>.Call leader = flights.join("a");
+        SingleFlight<String, Result>.Call follower = flights.join("a");
+        //e.g. rejected by the signing queue
+        leader.close();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.getResult().get());
+        assertTrue(e.getCause() instanceof IOException);
+        follower.close();
+        assertTrue(flights.join("a").isLeader());
+    }
+
+    @Test
+    void testLeaderFailurePassedOn() {
+        SingleFlight<String, Result> flights = new SingleFlight<>();
+        SingleFlight<String, Result>.Call leader = flights.join("a");
+        SingleFlight<String, Result>.Call follower = flights.join("a");
+        //e.g. the rejection of the signing queue, answered the same way by the waiting requests
+        IOException rejection = new IOException("rejected");
+        leader.fail(rejection);
+        leader.close();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.getResult().get());
+        assertSame(rejection, e.getCause());
+        follower.close();
+    }
+
+    private static class Result implements Closeable {
+        private final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
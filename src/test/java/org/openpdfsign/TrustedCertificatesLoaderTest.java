@@ -0,0 +1,93 @@
+package org.openpdfsign;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrustedCertificatesLoaderTest {
+
+    @Test
+    void testSnapshotRoundTrip(@TempDir Path tempDir) throws Exception {
+        Path pubKey = Paths.get(getClass().getClassLoader().getResource("cert.pem").toURI());
+        Path privKey = Paths.get(getClass().getClassLoader().getResource("key_nopass.pem").toURI());
+        CertificateToken certificate = KeyStoreLoader.loadKeyEntryFromKeys(pubKey, privKey, null).getCertificate();
+
+        TrustedCertificatesLoader.TrustAnchors snapshot = new TrustedCertificatesLoader.TrustAnchors(1234L, Collections.singletonList(certificate));
+        assertTrue(snapshot.getTrustedSource().isTrusted(certificate));
+
+        Path file = tempDir.resolve("trust-anchors.bin");
+        TrustedCertificatesLoader.write(file, "https://example.com/lotl.xml", snapshot);
+
+        TrustedCertificatesLoader.TrustAnchors loaded = TrustedCertificatesLoader.read(file, "https://example.com/lotl.xml");
+        assertNotNull(loaded);
+        assertEquals(1234L, loaded.getCreated());
+        assertEquals(1, loaded.getCertificates().size());
+        assertEquals(certificate, loaded.getCertificates().get(0));
+        assertTrue(loaded.getTrustedSource().isTrusted(certificate));
+
+        //built from other sources: not used
+        assertNull(TrustedCertificatesLoader.read(file, "https://example.com/other.xml"));
+        assertNull(TrustedCertificatesLoader.read(tempDir.resolve("missing.bin"), "https://example.com/lotl.xml"));
+
+        //a snapshot others could have changed is not trusted
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+            assertNull(TrustedCertificatesLoader.read(file, "https://example.com/lotl.xml"));
+        }
+    }
+
+    @Test
+    void testDirectoryTrustStore(@TempDir Path tempDir) throws Exception {
+        Path store = tempDir.resolve("certs");
+        Path index = tempDir.resolve("index");
+        Files.createDirectories(store);
+        //the same certificate as PEM and DER, a key and an unrelated file
+        Files.copy(resource("cert.pem"), store.resolve("cert.pem"));
+        Files.copy(resource("cert.crt"), store.resolve("cert.crt"));
+        Files.copy(resource("key_nopass.pem"), store.resolve("key.pem"));
+        Files.write(store.resolve("README"), "no certificate".getBytes(StandardCharsets.UTF_8));
+
+        List<CertificateToken> certificates = TrustedCertificatesLoader.loadFromPath(store, index);
+        assertEquals(1, certificates.size());
+
+        Path ecc = store.resolve("cert-ecc.pem");
+        Files.copy(resource("cert-ecc.pem"), ecc);
+        assertEquals(2, TrustedCertificatesLoader.loadFromPath(store, index).size());
+
+        //unchanged directory: served from the index, the files are not parsed again
+        FileTime eccModified = Files.getLastModifiedTime(ecc);
+        FileTime storeModified = Files.getLastModifiedTime(store);
+        byte[] garbage = new byte[(int) Files.size(ecc)];
+        Arrays.fill(garbage, (byte) 'x');
+        Files.write(ecc, garbage);
+        Files.setLastModifiedTime(ecc, eccModified);
+        Files.setLastModifiedTime(store, storeModified);
+        assertEquals(2, TrustedCertificatesLoader.loadFromPath(store, index).size());
+    }
+
+    @Test
+    void testBundleTrustStore(@TempDir Path tempDir) throws Exception {
+        Path bundle = tempDir.resolve("bundle.pem");
+        Files.write(bundle, Files.readAllBytes(resource("cert.pem")));
+        Files.write(bundle, Files.readAllBytes(resource("cert-ecc.pem")), StandardOpenOption.APPEND);
+        assertEquals(2, TrustedCertificatesLoader.loadFromPath(bundle, tempDir.resolve("index")).size());
+    }
+
+    private Path resource(String name) throws Exception {
+        return Paths.get(getClass().getClassLoader().getResource(name).toURI());
+    }
+}
@@ -0,0 +1,55 @@
+package org.openpdfsign;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsaRegistryTest {
+
+    @Test
+    void testRouteByLatency() {
+        TsaRegistry registry = new TsaRegistry(3, 60000);
+        for (int i = 0; i < 20; i++) {
+            registry.recordSuccess("slow", 800);
+            registry.recordSuccess("fast", 40);
+        }
+        assertEquals(Arrays.asList("fast", "slow"), registry.route(Arrays.asList("slow", "fast")));
+    }
+
+    @Test
+    void testCircuitBreaker() throws Exception {
+        TsaRegistry registry = new TsaRegistry(3, 100);
+        for (int i = 0; i < 3; i++) {
+            registry.recordFailure("broken");
+        }
+        assertEquals(TsaRegistry.State.OPEN, registry.get("broken").getState(System.currentTimeMillis()));
+        assertEquals(Arrays.asList("healthy"), registry.route(Arrays.asList("broken", "healthy")));
+        assertFalse(registry.tryAcquire("broken"));
+        //all circuits open: try anyway
+        assertEquals(Arrays.asList("broken"), registry.route(Arrays.asList("broken")));
+        assertTrue(registry.allOpen(Arrays.asList("broken")));
+        assertTrue(registry.tryAcquire("broken", true));
+        registry.recordFailure("broken");
+        assertEquals(TsaRegistry.State.OPEN, registry.get("broken").getState(System.currentTimeMillis()));
+
+        //half-open: one probe at a time, failing probe opens again
+        Thread.sleep(150);
+        assertEquals(Arrays.asList("healthy", "broken"), registry.route(Arrays.asList("broken", "healthy")));
+        assertTrue(registry.tryAcquire("broken"));
+        assertFalse(registry.tryAcquire("broken"));
+        registry.recordFailure("broken");
+        assertEquals(TsaRegistry.State.OPEN, registry.get("broken").getState(System.currentTimeMillis()));
+
+        //successful probe closes the circuit
+        Thread.sleep(150);
+        assertTrue(registry.tryAcquire("broken"));
+        registry.recordSuccess("broken", 50);
+        assertEquals(TsaRegistry.State.CLOSED, registry.get("broken").getState(System.currentTimeMillis()));
+
+        Map<String, Object> snapshot = registry.snapshot();
+        assertTrue(snapshot.containsKey("broken"));
+    }
+}
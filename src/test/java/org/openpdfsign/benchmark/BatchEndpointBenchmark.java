@@ -0,0 +1,143 @@
+package org.openpdfsign.benchmark;
+
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.openpdfsign.CommandLineArguments;
+import org.openpdfsign.Configuration;
+import org.openpdfsign.KeyStoreLoader;
+import org.openpdfsign.ServerConfigHolder;
+import org.openpdfsign.Signer;
+import org.openpdfsign.SignerServlet;
+import org.openpdfsign.SigningExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the throughput of signing many small documents with one HTTP request per document (application/pdf)
+ * and with multipart/mixed batch requests, against an in-process server.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openpdfsign.benchmark.BatchEndpointBenchmark
+ * Optional arguments: number of documents, client connections, documents per batch (default: 2000 8 200)
+ */
+public class BatchEndpointBenchmark {
+    private static final String BOUNDARY = "benchmark-boundary";
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        Configuration.getInstance(new Locale("en", "AT"));
+        Path cert = Paths.get(BatchEndpointBenchmark.class.getClassLoader().getResource("cert.pem").toURI());
+        Path key = Paths.get(BatchEndpointBenchmark.class.getClassLoader().getResource("key_nopass.pem").toURI());
+        byte[] pdf = Files.readAllBytes(Paths.get(BatchEndpointBenchmark.class.getClassLoader().getResource("demo.pdf").toURI()));
+
+        CommandLineArguments cla = new CommandLineArguments();
+        KSPrivateKeyEntry keyEntry = KeyStoreLoader.loadKeyEntryFromKeys(cert, key, null);
+        ServerConfigHolder config = ServerConfigHolder.getInstance();
+        config.setParams(cla);
+        config.getKeys().register("_", keyEntry);
+        config.getSessions().put("_", new Signer().newSession(keyEntry, cla));
+        config.setExecutor(new SigningExecutor(Runtime.getRuntime().availableProcessors(), documents, 0));
+
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        ServletHandler servletHandler = new ServletHandler();
+        servletHandler.addServletWithMapping(SignerServlet.class, "/*").setAsyncSupported(true);
+        server.setHandler(servletHandler);
+        server.addConnector(connector);
+        server.start();
+        URL url = new URL("http://localhost:" + connector.getLocalPort() + "/");
+
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+        try {
+            //warmup
+            run(clients, connections, documents / 10, i -> post(url, "application/pdf", pdf));
+            run(clients, connections, 2, i -> post(url, "multipart/mixed; boundary=" + BOUNDARY, batch(pdf, batchSize / 10)));
+
+            long start = System.nanoTime();
+            run(clients, connections, documents, i -> post(url, "application/pdf", pdf));
+            long single = System.nanoTime() - start;
+
+            byte[] batch = batch(pdf, batchSize);
+            start = System.nanoTime();
+            run(clients, connections, documents / batchSize, i -> post(url, "multipart/mixed; boundary=" + BOUNDARY, batch));
+            long batched = System.nanoTime() - start;
+            int batchedDocuments = documents / batchSize * batchSize;
+
+            System.out.printf("one request per document:    %8.1f documents/s%n", documents / (single / 1e9));
+            System.out.printf("batches of %5d documents:  %8.1f documents/s%n", batchSize, batchedDocuments / (batched / 1e9));
+        } finally {
+            clients.shutdownNow();
+            server.stop();
+        }
+    }
+
+    private static void run(ExecutorService clients, int connections, int requests, Request request) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            futures.add(clients.submit(() -> {
+                for (int i = connection; i < requests; i += connections) {
+                    request.send(i);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static byte[] batch(byte[] pdf, int documents) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < documents; i++) {
+            body.write(("--" + BOUNDARY + "\r\nContent-Type: application/pdf\r\n" +
+                    "Content-Disposition: attachment; filename=\"" + i + ".pdf\"\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            body.write(pdf);
+            body.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private static void post(URL url, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("request failed with " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            IOUtils.consume(in);
+        }
+    }
+
+    private interface Request {
+        void send(int index) throws Exception;
+    }
+}
@@ -0,0 +1,67 @@
+package org.openpdfsign.benchmark;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.JKSSignatureToken;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.openpdfsign.KeyRegistry;
+import org.openpdfsign.KeyStoreLoader;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Random;
+
+/**
+ * Compares the per-request cost of signing with a key that is decoded from the PKCS#12 keystore
+ * on every request (as done before the {@link KeyRegistry}), and with an already decoded key entry.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openpdfsign.benchmark.KeyDecodeBenchmark
+ */
+public class KeyDecodeBenchmark {
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        Path cert = Paths.get(KeyDecodeBenchmark.class.getClassLoader().getResource("cert.pem").toURI());
+        Path key = Paths.get(KeyDecodeBenchmark.class.getClassLoader().getResource("key.pem").toURI());
+        char[] privateKeyPassword = "123456789".toCharArray();
+        char[] keyStorePassword = "987654321".toCharArray();
+
+        byte[] keyStore = KeyStoreLoader.loadKeyStoreFromKeys(cert, key, privateKeyPassword, keyStorePassword);
+        KSPrivateKeyEntry keyEntry = KeyStoreLoader.loadKeyEntryFromKeys(cert, key, privateKeyPassword);
+        KeyRegistry.KeyEntryToken token = new KeyRegistry.KeyEntryToken(keyEntry);
+
+        byte[] data = new byte[1024];
+        new Random(42).nextBytes(data);
+        ToBeSigned toBeSigned = new ToBeSigned(data);
+
+        for (int i = 0; i < WARMUP; i++) {
+            signWithDecode(keyStore, keyStorePassword, toBeSigned);
+            token.sign(toBeSigned, DigestAlgorithm.SHA256, keyEntry);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            signWithDecode(keyStore, keyStorePassword, toBeSigned);
+        }
+        long withDecode = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            token.sign(toBeSigned, DigestAlgorithm.SHA256, keyEntry);
+        }
+        long decodedOnce = System.nanoTime() - start;
+
+        System.out.printf("decode keystore per request: %8.3f ms/signature%n", withDecode / 1e6 / ITERATIONS);
+        System.out.printf("decoded key entry:           %8.3f ms/signature%n", decodedOnce / 1e6 / ITERATIONS);
+    }
+
+    private static void signWithDecode(byte[] keyStore, char[] keyStorePassword, ToBeSigned toBeSigned) {
+        JKSSignatureToken signingToken = new JKSSignatureToken(keyStore, new KeyStore.PasswordProtection(keyStorePassword));
+        DSSPrivateKeyEntry entry = signingToken.getKey("alias");
+        signingToken.sign(toBeSigned, DigestAlgorithm.SHA256, entry);
+        signingToken.close();
+    }
+}
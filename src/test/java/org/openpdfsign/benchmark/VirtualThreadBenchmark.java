@@ -0,0 +1,90 @@
+package org.openpdfsign.benchmark;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import org.openpdfsign.KeyRegistry;
+import org.openpdfsign.KeyStoreLoader;
+import org.openpdfsign.SigningExecutor;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the server's {@link SigningExecutor} at high concurrency, when every signature waits
+ * for a slow time stamping authority: on a platform thread pool sized to the CPUs (the default before), on a
+ * platform thread pool sized to the concurrency, and on virtual threads (Java 21 and later only).
+ * Every job computes one RSA signature and then blocks for the simulated TSA latency.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openpdfsign.benchmark.VirtualThreadBenchmark
+ * Optional arguments: concurrency, number of jobs, TSA latency in ms (default: 1000 5000 200)
+ */
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int jobs = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        long tsaLatency = args.length > 2 ? Long.parseLong(args[2]) : 200;
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        Path cert = Paths.get(VirtualThreadBenchmark.class.getClassLoader().getResource("cert.pem").toURI());
+        Path key = Paths.get(VirtualThreadBenchmark.class.getClassLoader().getResource("key_nopass.pem").toURI());
+        KSPrivateKeyEntry keyEntry = KeyStoreLoader.loadKeyEntryFromKeys(cert, key, null);
+        KeyRegistry.KeyEntryToken token = new KeyRegistry.KeyEntryToken(keyEntry);
+        byte[] data = new byte[1024];
+        new Random(42).nextBytes(data);
+        ToBeSigned toBeSigned = new ToBeSigned(data);
+        Runnable job = () -> {
+            token.sign(toBeSigned, DigestAlgorithm.SHA256, keyEntry);
+            try {
+                Thread.sleep(tsaLatency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        //warm up the signature code
+        run("warmup", cpus, Executors.newFixedThreadPool(cpus), jobs / 10, job);
+
+        run("platform threads, " + cpus + " (CPUs)", cpus, Executors.newFixedThreadPool(cpus), jobs, job);
+        run("platform threads, " + concurrency, concurrency, Executors.newFixedThreadPool(concurrency), jobs, job);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            run("virtual threads, " + concurrency, concurrency, virtual, jobs, job);
+        } else {
+            System.out.println("virtual threads: not available, requires Java 21 or later");
+        }
+    }
+
+    private static void run(String name, int concurrency, ExecutorService workers, int jobs, Runnable job) throws InterruptedException {
+        //all jobs are queued at once, as by a burst of requests
+        SigningExecutor executor = new SigningExecutor(concurrency, jobs, 0, workers);
+        CountDownLatch done = new CountDownLatch(jobs);
+        long start = System.nanoTime();
+        for (int i = 0; i < jobs; i++) {
+            executor.submit(() -> {
+                job.run();
+                done.countDown();
+            });
+        }
+        done.await(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+        workers.shutdown();
+        if (!"warmup".equals(name)) {
+            System.out.printf("%-32s %8.1f signatures/s%n", name + ":", jobs / (elapsed / 1e9));
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
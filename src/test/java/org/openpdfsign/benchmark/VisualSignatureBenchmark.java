@@ -0,0 +1,107 @@
+package org.openpdfsign.benchmark;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.openpdfsign.dss.ImageAsset;
+import org.openpdfsign.dss.ImageAssetCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Compares building the visible signature appearance in a separate document which is saved and parsed again
+ * (as done before), with building it in the signed document and passing only the field through the visual signature.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openpdfsign.benchmark.VisualSignatureBenchmark
+ */
+public class VisualSignatureBenchmark {
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+    private static final PDRectangle RECTANGLE = new PDRectangle(50, 50, 300, 80);
+
+    public static void main(String[] args) throws Exception {
+        byte[] image;
+        try (InputStream is = VisualSignatureBenchmark.class.getClassLoader().getResourceAsStream("signature.png")) {
+            image = IOUtils.toByteArray(is);
+        }
+        ImageAsset asset = ImageAssetCache.getInstance().getAsset(image, 65, 75);
+
+        for (int i = 0; i < WARMUP; i++) {
+            roundTrip(asset);
+            direct(asset);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            roundTrip(asset);
+        }
+        long roundTrip = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            direct(asset);
+        }
+        long direct = System.nanoTime() - start;
+
+        System.out.printf("appearance saved and parsed:   %8.3f ms/signature%n", roundTrip / 1e6 / ITERATIONS);
+        System.out.printf("appearance in target document: %8.3f ms/signature%n", direct / 1e6 / ITERATIONS);
+    }
+
+    private static void roundTrip(ImageAsset asset) throws IOException {
+        try (PDDocument target = new PDDocument(); PDDocument doc = new PDDocument();
+             SignatureOptions options = new SignatureOptions()) {
+            PDAppearanceStream appearanceStream = appearance(doc, asset);
+            visualSignature(doc, appearanceStream, options);
+        }
+    }
+
+    private static void direct(ImageAsset asset) throws IOException {
+        try (PDDocument target = new PDDocument(); PDDocument doc = new PDDocument();
+             SignatureOptions options = new SignatureOptions()) {
+            appearance(target, asset);
+            visualSignature(doc, new PDAppearanceStream(doc.getDocument().createCOSStream()), options);
+        }
+    }
+
+    private static PDAppearanceStream appearance(PDDocument doc, ImageAsset asset) throws IOException {
+        PDFormXObject form = new PDFormXObject(new PDStream(doc));
+        form.setResources(new PDResources());
+        form.setBBox(new PDRectangle(RECTANGLE.getWidth(), RECTANGLE.getHeight()));
+        PDAppearanceStream appearanceStream = new PDAppearanceStream(form.getCOSObject());
+        try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream)) {
+            cs.drawImage(asset.createXObject(doc), 5, 5, 65, 70);
+        }
+        return appearanceStream;
+    }
+
+    private static void visualSignature(PDDocument doc, PDAppearanceStream appearanceStream, SignatureOptions options) throws IOException {
+        doc.addPage(new PDPage(PDRectangle.A4));
+        PDAcroForm acroForm = new PDAcroForm(doc);
+        doc.getDocumentCatalog().setAcroForm(acroForm);
+        PDSignatureField signatureField = new PDSignatureField(acroForm);
+        acroForm.getFields().add(signatureField);
+        PDAnnotationWidget widget = signatureField.getWidgets().get(0);
+        widget.setRectangle(RECTANGLE);
+        PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+        appearance.setNormalAppearance(appearanceStream);
+        widget.setAppearance(appearance);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        doc.save(baos);
+        options.setVisualSignature(new ByteArrayInputStream(baos.toByteArray()));
+    }
+}
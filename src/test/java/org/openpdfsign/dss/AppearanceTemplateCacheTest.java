@@ -0,0 +1,49 @@
+package org.openpdfsign.dss;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.openpdfsign.TableSignatureFieldParameters;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppearanceTemplateCacheTest {
+
+    @Test
+    void testTemplateReusedAcrossDates() throws Exception {
+        byte[] image;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("signature.png")) {
+            image = IOUtils.toByteArray(is);
+        }
+        AppearanceTemplateCache cache = AppearanceTemplateCache.getInstance();
+        cache.clear();
+
+        TableSignatureFieldParameters first = fieldParameters("CN=Signer", "2024-01-01T10:00:00+01:00");
+        TableSignatureFieldParameters second = fieldParameters("CN=Signer", "2024-01-01T10:00:05+01:00");
+        TableSignatureFieldParameters otherSigner = fieldParameters("CN=Other Signer", "2024-01-01T10:00:05+01:00");
+
+        AppearanceTemplate template = cache.getTemplate(first, image, 300);
+        assertSame(template, cache.getTemplate(second, image, 300));
+        assertNotSame(template, cache.getTemplate(otherSigner, image, 300));
+        assertNotSame(template, cache.getTemplate(first, image, 400));
+        assertEquals(3, cache.size());
+
+        assertTrue(template.isHasDate());
+        assertNotNull(template.getImageName());
+        assertTrue(template.getContent().length > 0);
+        assertTrue(template.getDateTopY() < template.getHeight());
+    }
+
+    private TableSignatureFieldParameters fieldParameters(String signer, String date) {
+        TableSignatureFieldParameters parameters = new TableSignatureFieldParameters();
+        parameters.setSignaturString(signer);
+        parameters.setSignatureDate(date);
+        parameters.setLabelSignee("Signee");
+        parameters.setLabelTimestamp("Timestamp");
+        parameters.setLabelHint("Note");
+        parameters.setHint("This document is signed");
+        parameters.setImageOnly(false);
+        return parameters;
+    }
+}
@@ -0,0 +1,41 @@
+package org.openpdfsign.dss;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageAssetCacheTest {
+
+    @Test
+    void testDownsampleAndReuse() throws Exception {
+        BufferedImage large = new BufferedImage(3000, 1500, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(large, "png", png);
+        byte[] image = png.toByteArray();
+
+        ImageAssetCache cache = ImageAssetCache.getInstance();
+        cache.clear();
+        ImageAsset asset = cache.getAsset(image, 65, 75);
+        assertSame(asset, cache.getAsset(image, 65, 75));
+        assertEquals(1, cache.size());
+
+        //never below one pixel per point, far below the original size
+        assertTrue(asset.getWidth() >= 65 && asset.getWidth() < 3000);
+        assertEquals(2, Math.round((float) asset.getWidth() / asset.getHeight()));
+        assertNotNull(asset.getSoftMask());
+
+        try (PDDocument first = new PDDocument(); PDDocument second = new PDDocument()) {
+            PDImageXObject firstImage = asset.createXObject(first);
+            PDImageXObject secondImage = asset.createXObject(second);
+            assertNotSame(firstImage.getCOSObject(), secondImage.getCOSObject());
+            assertEquals(asset.getWidth(), firstImage.getImage().getWidth());
+            assertNotNull(secondImage.getSoftMask());
+        }
+    }
+}